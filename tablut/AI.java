@@ -2,6 +2,13 @@ package tablut;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import static java.lang.Math.*;
 
@@ -22,20 +29,110 @@ class AI extends Player {
     /** A magnitude greater than a normal value. */
     private static final int INFTY = Integer.MAX_VALUE;
 
+    /** Move-ordering scores of the transposition-table move, captures, and
+     *  killer moves.  History scores are kept below HISTORY_LIMIT, so that
+     *  they order only the remaining moves. */
+    private static final int
+        TT_MOVE_SCORE = 1 << 30,
+        CAPTURE_SCORE = 1 << 29,
+        KILLER_SCORE = 1 << 28,
+        HISTORY_LIMIT = 1 << 27;
+
+    /** Maximum number of plies of quiescence search beyond the nominal
+     *  search depth. */
+    private static final int QUIESCENCE_PLIES = 6;
+
+    /** Half-width of the aspiration window around the score of the
+     *  previous iteration of findMove's search. */
+    private static final int ASPIRATION_WINDOW = Evaluation.PIECE_VALUE;
+
+    /** Selective search techniques (see setPruning): null-move pruning,
+     *  late-move reductions, and futility pruning. */
+    static final int
+        NULL_MOVE = 1,
+        LATE_MOVE_REDUCTIONS = 2,
+        FUTILITY = 4,
+        ALL_PRUNING = NULL_MOVE | LATE_MOVE_REDUCTIONS | FUTILITY;
+
+    /** Null-move pruning is tried at depths of at least
+     *  NULL_MOVE_MIN_DEPTH, with a search NULL_MOVE_REDUCTION plies
+     *  shallower than a normal one. */
+    private static final int
+        NULL_MOVE_MIN_DEPTH = 3,
+        NULL_MOVE_REDUCTION = 2;
+
+    /** Late-move reductions apply at depths of at least
+     *  REDUCTION_MIN_DEPTH to the quiet moves after the first
+     *  UNREDUCED_MOVES, which are searched LATE_MOVE_REDUCTION plies
+     *  shallower than a normal one. */
+    private static final int
+        REDUCTION_MIN_DEPTH = 3,
+        UNREDUCED_MOVES = 3,
+        LATE_MOVE_REDUCTION = 1;
+
+    /** Quiet moves one ply from the leaves are pruned when the static
+     *  score is this far below ALPHA. */
+    private static final int FUTILITY_MARGIN = 2 * Evaluation.PIECE_VALUE;
+
+    /** Default search depth. */
+    static final int DEPTH = 4;
+
+    /** Log base 2 of the number of transposition-table entries. */
+    private static final int TABLE_LOG_SIZE = 17;
+
+    /** Timed searches read the clock once every this many calls of
+     *  Searcher.stopped (about once per position searched). */
+    private static final int POLL_NODES = 1024;
+
     /** A new AI with no piece or controller (intended to produce
      *  a template). */
     AI() {
-        this(null, null);
+        this(null, null, 1, null, null);
+    }
+
+    /** A new AI template with no piece or controller that searches
+     *  with THREADS threads. */
+    AI(int threads) {
+        this(null, null, threads, null, null);
+    }
+
+    /** A new AI template with no piece or controller that searches
+     *  with THREADS threads, plays from BOOK (if not null) when it
+     *  can, and consults TABLEBASES (if not null; see Tablebase.load)
+     *  at the leaves of its searches. */
+    AI(int threads, OpeningBook book, Tablebase[][] tablebases) {
+        this(null, null, threads, book, tablebases);
     }
 
     /** A new AI playing PIECE under control of CONTROLLER. */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, 1, null, null);
+    }
+
+    /** A new AI playing PIECE under control of CONTROLLER that searches
+     *  with THREADS threads, plays from BOOK (if not null) when it
+     *  can, and consults TABLEBASES (if not null) at the leaves of its
+     *  searches. */
+    AI(Piece piece, Controller controller, int threads, OpeningBook book,
+       Tablebase[][] tablebases) {
         super(piece, controller);
+        _threads = max(1, threads);
+        _book = book;
+        _tablebases = tablebases;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI ai = new AI(piece, controller, _threads, _book, _tablebases);
+        ai._pondering = _pondering;
+        ai._quiescence = _quiescence;
+        ai._pvs = _pvs;
+        ai._symmetry = _symmetry;
+        ai._pruning = _pruning;
+        ai._depth = _depth;
+        ai._logStats = _logStats;
+        ai._evaluation = _evaluation;
+        return ai;
     }
 
     @Override
@@ -50,160 +147,950 @@ class AI extends Player {
         return false;
     }
 
+    @Override
+    synchronized void close() {
+        if (_ponder != null) {
+            _ponder._stopped = true;
+            _ponder = null;
+        }
+        if (_ponderThread != null) {
+            _ponderThread.shutdown();
+            _ponderThread = null;
+        }
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+    }
+
     /** Return a move for me from the current position, assuming there
      *  is a move. */
     private Move findMove() {
         Board b = new Board(board());
-        Piece turn = b.turn();
-        int sense;
-        if (turn.equals(BLACK)) {
-            sense = -1;
+        Move move = ponderResult(b);
+        if (move != null) {
+            _controller.logComment("%s: ponder hit (%d nodes)", move,
+                                   lastNodeCount());
+        } else if ((move = bookMove(b)) != null) {
+            _controller.logComment("%s: book move", move);
         } else {
-            sense = 1;
+            long start = System.nanoTime();
+            move = findMove(b, maxDepth(b));
+            long elapsed = max(1, System.nanoTime() - start);
+            _controller.logComment("%s: %d nodes in %d ms (%d nodes/s,"
+                                   + " %d threads)", move, lastNodeCount(),
+                                   elapsed / 1000000,
+                                   lastNodeCount() * 1000000000L / elapsed,
+                                   _threads);
+        }
+        if (_logStats && _lastStats != null) {
+            _controller.logComment("%s", _lastStats.toJSON());
+        }
+        if (_pondering) {
+            startPondering(b, move);
         }
-        findMove(b, 4, true, sense, -INFTY, INFTY);
+        return move;
+    }
 
-        return _lastFoundMove;
+    /** Return the best move for the side to move on BOARD found by a
+     *  search of DEPTH plies, assuming there is a move.  With principal
+     *  variation search on (see setPrincipalVariation), BOARD is searched
+     *  to each depth up to DEPTH in turn, each search after the first
+     *  with an aspiration window around the score found by the one
+     *  before.  The root moves after the first are split among threads()
+     *  threads, each searching its own copy of BOARD against the bound
+     *  set by the first move (young brothers wait).  Ties go to the
+     *  earliest move searched. */
+    Move findMove(Board board, int depth) {
+        return findMove(board, depth, Long.MAX_VALUE, null);
     }
 
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
+    /** Return the best move for the side to move on BOARD, as for
+     *  findMove(BOARD, DEPTH), except that with principal variation
+     *  search on, the search stops once TIME nanoseconds have passed.
+     *  An iteration deeper than the first that is still running then is
+     *  abandoned, and the move is the best found by the last iteration
+     *  completed.  The search overruns TIME by at most the time taken by
+     *  the first iteration and by POLL_NODES positions per thread. */
+    Move findMove(Board board, int depth, long time) {
+        return findMove(board, depth, time, null);
+    }
 
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove,
-                         int sense, int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
+    /** Return the best move for the side to move on BOARD, as for
+     *  findMove(BOARD, DEPTH, TIME), as part of search PONDER (null if
+     *  not pondering).  Returns null if PONDER is stopped before the
+     *  search finishes. */
+    private Move findMove(Board board, int depth, long time,
+                          Ponder ponder) {
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = board.legalMoves(board.turn(), moves, 0);
+        int ttMove = tableMove(board);
+        if (_ordering && ttMove != TranspositionTable.NO_MOVE) {
+            for (int i = 0; i < n; i += 1) {
+                if (moves[i] == ttMove) {
+                    System.arraycopy(moves, 0, moves, 1, i);
+                    moves[0] = ttMove;
+                    break;
+                }
+            }
+        }
+        Searcher first = new Searcher(depth, ponder);
+        long start = System.nanoTime();
+        if (!_pvs) {
+            int score =
+                searchRoot(first, board, moves, n, depth, -INFTY, INFTY);
+            first._stats.endIteration(depth, score, Move.mv(moves[0]),
+                                      System.nanoTime() - start);
+            return finishSearch(board, moves[0], first._stats, ponder);
+        }
+        int score = 0, best = moves[0];
+        for (int d = 1; d <= depth; d += 1) {
+            int alpha = -INFTY, beta = INFTY;
+            if (d > 1) {
+                alpha = max(-INFTY, score - ASPIRATION_WINDOW);
+                beta = min(INFTY, score + ASPIRATION_WINDOW);
+                first._deadline =
+                    time == Long.MAX_VALUE ? Long.MAX_VALUE : start + time;
+            }
+            while (true) {
+                score = searchRoot(first, board, moves, n, d, alpha, beta);
+                if (first._timedOut) {
+                    break;
+                } else if (score <= alpha && alpha != -INFTY) {
+                    alpha = -INFTY;
+                } else if (score >= beta && beta != INFTY) {
+                    beta = INFTY;
+                } else {
+                    break;
+                }
+            }
+            if (first._timedOut) {
+                break;
+            }
+            best = moves[0];
+            first._stats.endIteration(d, score, Move.mv(best),
+                                      System.nanoTime() - start);
+            if (abs(score) >= WILL_WIN_VALUE
+                || System.nanoTime() - start >= time) {
+                break;
+            }
         }
+        return finishSearch(board, best, first._stats, ponder);
+    }
 
-        int v = 0;
+    /** Search the N MOVES from BOARD to DEPTH plies with window ALPHA,
+     *  BETA and return the value of the best, from the point of view of
+     *  the side to move, moving it to the front of MOVES.  The value is
+     *  exact if it is strictly inside the window and otherwise a bound,
+     *  as for Searcher.search.  FIRST searches the first move; the
+     *  others are searched by FIRST as well if I have only one thread,
+     *  and otherwise in parallel, each by its own Searcher, whose
+     *  statistics are added to FIRST's.  With principal variation
+     *  search on, moves after the first are searched with a null window
+     *  and searched again only if they prove better than the best so
+     *  far. */
+    private int searchRoot(Searcher first, Board board, int[] moves, int n,
+                           int depth, int alpha, int beta) {
+        int bestScore = rootScore(first, board, moves[0], depth, alpha, beta);
+        if (bestScore >= beta || bestScore == WINNING_VALUE || n == 1) {
+            return bestScore;
+        }
 
-        if (sense == 1) {
-            List<Move> moves = board.legalMoves(WHITE);
-            v = Integer.MIN_VALUE + 1;
-            for (Move mv: moves) {
-                Board b = new Board(board);
-                b.makeMove(mv);
-                if (b.kingPosition().isEdge()) {
-                    if (saveMove) {
-                        _lastFoundMove = mv;
-                    }
-                    return WINNING_VALUE;
+        int[] scores = new int[n];
+        int best = 0;
+        if (_threads == 1) {
+            for (int i = 1; i < n; i += 1) {
+                int bound = max(alpha, bestScore);
+                scores[i] = rootScore(first, board, moves[i], depth,
+                                      bound, beta);
+                if (scores[i] > bestScore) {
+                    bestScore = scores[i];
+                    best = i;
                 }
-                int score = findMove(b, depth - 1, false, -sense, alpha, beta);
-                if (score >= v) {
-                    v = score;
-                    if (saveMove) {
-                        _lastFoundMove = mv;
-                    }
-                }
-                alpha = max(alpha, v);
-                if (v >= beta) {
+                if (bestScore >= beta || bestScore == WINNING_VALUE) {
                     break;
                 }
             }
-        } else if (sense == -1) {
-            List<Move> move = board.legalMoves(BLACK);
-            v = Integer.MAX_VALUE - 1;
-            for (Move mv: move) {
-                Board b = new Board(board);
-                b.makeMove(mv);
-                if (b.kingPosition() == null) {
-                    if (saveMove) {
-                        _lastFoundMove = mv;
-                    }
-                    return -WINNING_VALUE;
+        } else {
+            final int bound = max(alpha, bestScore);
+            List<Callable<Integer>> tasks = new ArrayList<>();
+            Searcher[] searchers = new Searcher[n];
+            for (int i = 1; i < n; i += 1) {
+                int mv = moves[i];
+                Searcher searcher = searchers[i] =
+                    new Searcher(depth, first._ponder);
+                searcher._deadline = first._deadline;
+                tasks.add(() -> rootScore(searcher, board, mv, depth,
+                                          bound, beta));
+            }
+            try {
+                List<Future<Integer>> results = pool().invokeAll(tasks);
+                for (int i = 1; i < n; i += 1) {
+                    scores[i] = results.get(i - 1).get();
+                    first._stats.add(searchers[i]._stats);
+                    first._timedOut |= searchers[i]._timedOut;
                 }
-                int score = findMove(b, depth - 1, false, -sense, alpha, beta);
-                if (score <= v) {
-                    v = score;
-                    if (saveMove) {
-                        _lastFoundMove = mv;
-                    }
+            } catch (InterruptedException excp) {
+                throw new Error("unexpected interrupt");
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+            for (int i = 1; i < n; i += 1) {
+                if (scores[i] > bestScore) {
+                    bestScore = scores[i];
+                    best = i;
                 }
-                beta = min(beta, v);
-                if (v <= alpha) {
+                if (bestScore >= beta || bestScore == WINNING_VALUE) {
                     break;
                 }
             }
         }
 
-        return v;
+        int mv = moves[best];
+        System.arraycopy(moves, 0, moves, 1, best);
+        moves[0] = mv;
+        return bestScore;
     }
 
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
-    private static int maxDepth(Board board) {
-
+    /** Record the result BEST (see Move.code) of a search of BOARD
+     *  with statistics STATS as part of search PONDER (null if not
+     *  pondering), and return BEST as a Move, or null if PONDER was
+     *  stopped, in which case the result is incomplete and is
+     *  discarded. */
+    private Move finishSearch(Board board, int best, SearchStats stats,
+                              Ponder ponder) {
+        if (ponder == null) {
+            _lastStats = stats;
+        } else if (ponder._stopped) {
+            return null;
+        } else {
+            ponder._stats = stats;
+        }
+        int sym = _symmetry ? board.canonicalSymmetry() : 0;
+        _table.store(board.symmetricKey(sym), Move.symmetric(best, sym));
+        return Move.mv(best);
+    }
 
+    /** Turn pondering on iff ON.  When pondering, after each of my moves
+     *  I predict my opponent's reply from the transposition table and
+     *  search the resulting position in a background thread while the
+     *  opponent thinks.  It is initially off. */
+    void setPondering(boolean on) {
+        _pondering = on;
+    }
 
+    /** Start pondering the position that results from MOVE and the reply
+     *  to it that I predict on BOARD, if I can predict one.  Does not
+     *  wait for the search. */
+    private void startPondering(Board board, Move move) {
+        Board b = new Board(board);
+        b.makeMove(move);
+        if (b.winner() != null) {
+            return;
+        }
+        int reply = tableMove(b);
+        if (reply == TranspositionTable.NO_MOVE
+            || !b.isLegal(Move.mv(reply))) {
+            return;
+        }
+        b.makeMove(Move.mv(reply));
+        if (b.winner() != null || !b.hasMove(b.turn())) {
+            return;
+        }
+        Ponder ponder = new Ponder(b, maxDepth(b));
+        if (_ponderThread == null) {
+            _ponderThread = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ponder._result = _ponderThread.submit(ponder);
+        _ponder = ponder;
+    }
 
-        return 4;
+    /** Return the move found by pondering if it was pondering BOARD,
+     *  waiting for that search to finish if need be.  Otherwise stop any
+     *  pondering search, without waiting for it, and return null. */
+    private Move ponderResult(Board board) {
+        Ponder ponder = _ponder;
+        _ponder = null;
+        if (ponder == null) {
+            return null;
+        }
+        if (ponder._key != board.positionKey()) {
+            ponder._stopped = true;
+            _controller.logComment("ponder miss");
+            return null;
+        }
+        try {
+            Move move = ponder._result.get();
+            _lastStats = ponder._stats;
+            return move;
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
     }
 
+    /** A search of a predicted position, run while the opponent is
+     *  thinking. */
+    private class Ponder implements Callable<Move> {
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Square kingsq = board.kingPosition();
-        if (kingsq == null) {
-            return -WINNING_VALUE;
+        /** A search of BOARD to DEPTH plies. */
+        Ponder(Board board, int depth) {
+            _board = board;
+            _depth = depth;
+            _key = board.positionKey();
+        }
+
+        @Override
+        public Move call() {
+            return _stopped ? null
+                : findMove(_board, _depth, Long.MAX_VALUE, this);
         }
-        if (kingsq.isEdge()) {
+
+        /** The position searched. */
+        private final Board _board;
+        /** Depth of the search. */
+        private final int _depth;
+        /** Position key of _board. */
+        private final long _key;
+        /** Set to stop the search early. */
+        private volatile boolean _stopped;
+        /** Statistics of the search. */
+        private SearchStats _stats;
+        /** The eventual result of the search. */
+        private Future<Move> _result;
+    }
+
+    /** Return my opening book's move for BOARD, or null if I have no book,
+     *  BOARD is not in it, or the book move is not legal on BOARD. */
+    private Move bookMove(Board board) {
+        if (_book == null) {
+            return null;
+        }
+        int code = _book.move(board);
+        if (code == OpeningBook.NO_MOVE) {
+            return null;
+        }
+        Move mv = Move.mv(code);
+        if (mv == null || !board.isLegal(mv)) {
+            return null;
+        }
+        return mv;
+    }
+
+    /** Return the value of making MV on BOARD, as seen by the side
+     *  making it, searching DEPTH plies in total with SEARCHER.  Values
+     *  that are not greater than ALPHA or are at least BETA need only be
+     *  reported as such.  With principal variation search on, the move is
+     *  first searched with a null window at ALPHA, and searched again
+     *  with the full window only if its value proves greater than ALPHA.
+     *  Does not modify BOARD. */
+    private int rootScore(Searcher searcher, Board board, int mv,
+                          int depth, int alpha, int beta) {
+        Board b = new Board(board);
+        b.makeMove(mv);
+        searcher._stats.countNode();
+        if (wonBy(b, board.turn())) {
             return WINNING_VALUE;
         }
-        if (!board.isThrown(kingsq)) {
-            int block = 0;
-            ArrayList<Square> ss = surroundedsquare(kingsq);
-            for (Square s: ss) {
-                if (board.get(s).equals(BLACK)) {
-                    block++;
+        if (_pvs && alpha != -INFTY && beta - alpha > 1) {
+            int score =
+                -searcher.search(b, depth - 1, -alpha - 1, -alpha, true);
+            if (score <= alpha || score >= beta) {
+                return score;
+            }
+        }
+        return -searcher.search(b, depth - 1, -beta, -alpha, true);
+    }
+
+    /** Return the principal variation found by my last search of BOARD:
+     *  the best move, the best reply to it, and so on, as recorded in my
+     *  transposition table, up to LENGTH moves.  The variation ends
+     *  early if the table has no legal move for a position or the game
+     *  ends.  Entries for the positions deep in the variation may have
+     *  been replaced, so it may be shorter than the depth searched. */
+    List<Move> principalVariation(Board board, int length) {
+        List<Move> pv = new ArrayList<>();
+        Board b = new Board(board);
+        while (pv.size() < length && b.winner() == null) {
+            int code = tableMove(b);
+            if (code == TranspositionTable.NO_MOVE) {
+                break;
+            }
+            Move mv = Move.mv(code);
+            if (mv == null || !b.isLegal(mv)) {
+                break;
+            }
+            pv.add(mv);
+            b.makeMove(mv);
+        }
+        return pv;
+    }
+
+    /** Return the move recorded in my transposition table for BOARD
+     *  (encoded as by Move.code), or NO_MOVE if there is none.  If I use
+     *  symmetry (see setSymmetry), the move may have been recorded for a
+     *  position symmetric to BOARD. */
+    private int tableMove(Board board) {
+        int sym = _symmetry ? board.canonicalSymmetry() : 0;
+        return fromTable(_table.move(board.symmetricKey(sym)), sym);
+    }
+
+    /** Return the move MV (encoded as by Move.code, or NO_MOVE) found in
+     *  the transposition table under the key of a position as carried by
+     *  symmetry SYM, carried back to that position. */
+    private static int fromTable(int mv, int sym) {
+        if (mv == TranspositionTable.NO_MOVE || sym == 0) {
+            return mv;
+        }
+        return Move.symmetric(mv, INVERSE_SYMMETRY[sym]);
+    }
+
+    /** Return the number of positions visited by the last call to
+     *  findMove. */
+    @Override
+    long lastNodeCount() {
+        return _lastStats == null ? 0 : _lastStats.nodes();
+    }
+
+    /** Return the statistics of the search that produced my last move,
+     *  or null if there has been none.  A move found by pondering has
+     *  the statistics of the pondering search; a book move has none, and
+     *  leaves those of the previous search. */
+    SearchStats lastStats() {
+        return _lastStats;
+    }
+
+    /** Write the statistics of each of my searches (see lastStats) to my
+     *  controller's log as a comment containing a JSON object, iff
+     *  ON.  It is initially off. */
+    void setLogStats(boolean on) {
+        _logStats = on;
+    }
+
+    /** Turn the move-ordering heuristics used by findMove on iff ON.
+     *  They are initially on. */
+    void setMoveOrdering(boolean on) {
+        _ordering = on;
+        _table.clear();
+    }
+
+    /** Turn principal variation search on iff ON (see findMove and
+     *  Searcher.search).  When it is off, findMove does a single
+     *  alpha-beta search with a full window and uses stored results only
+     *  to order moves.  It is initially on. */
+    void setPrincipalVariation(boolean on) {
+        _pvs = on;
+        _table.clear();
+    }
+
+    /** Turn on iff ON the sharing of transposition-table entries among
+     *  symmetric positions, which are keyed by their canonical keys (see
+     *  Board.canonicalSymmetry).  It is initially on. */
+    void setSymmetry(boolean on) {
+        _symmetry = on;
+        _table.clear();
+    }
+
+    /** Use the selective search techniques in TECHNIQUES, a union of
+     *  NULL_MOVE, LATE_MOVE_REDUCTIONS, and FUTILITY (or 0 for none).
+     *  None is used where the king can escape or is attacked from two
+     *  sides, since passing or quiet moves there are no guide to the
+     *  position's value.  Initially, all are used. */
+    void setPruning(int techniques) {
+        _pruning = techniques;
+        _table.clear();
+    }
+
+    /** Evaluate positions with EVALUATION.  Initially, I use
+     *  Evaluation.DEFAULT. */
+    void setEvaluation(Evaluation evaluation) {
+        _evaluation = evaluation;
+        _table.clear();
+    }
+
+    /** Return the Evaluation I use. */
+    Evaluation evaluation() {
+        return _evaluation;
+    }
+
+    /** Set the depth to which I search when choosing my moves to
+     *  DEPTH.  It is initially DEPTH. */
+    void setDepth(int depth) {
+        _depth = max(1, depth);
+    }
+
+    /** Turn quiescence search at the leaves of findMove's search on iff
+     *  ON.  It is initially on. */
+    void setQuiescence(boolean on) {
+        _quiescence = on;
+        _table.clear();
+    }
+
+    /** Return the number of threads I search with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the pool that runs my parallel searches, creating it if
+     *  needed. */
+    private synchronized ForkJoinPool pool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(_threads);
+        }
+        return _pool;
+    }
+
+    /** A sequential alpha-beta searcher.  Each thread taking part in a
+     *  search uses its own Searcher, so that it may keep statistics and
+     *  move-ordering tables without synchronization. */
+    private class Searcher {
+
+        /** A Searcher for searches of at most DEPTH plies, as part of
+         *  search PONDER (null if not pondering). */
+        Searcher(int depth, Ponder ponder) {
+            _ponder = ponder;
+            _moves = new int[depth + 1][Board.MAX_MOVES];
+            _quietMoves = new int[QUIESCENCE_PLIES][Board.MAX_MOVES];
+            _scores = new int[depth + 1][Board.MAX_MOVES];
+            _killers = new int[depth + 1][2];
+            for (int[] killers : _killers) {
+                Arrays.fill(killers, TranspositionTable.NO_MOVE);
+            }
+        }
+
+        /** Return the value of position BOARD from the point of view of
+         *  the side to move, searching DEPTH plies.  Values not greater
+         *  than ALPHA need only be reported as such (they are upper
+         *  bounds on the true value), as do values of at least BETA (lower
+         *  bounds).  Searching at level 0 returns a static estimate of the
+         *  board value, refined by quiescence search if that is on.  With
+         *  principal variation search on, moves after the first are
+         *  searched with a null window, and the search stops early at
+         *  positions whose stored scores settle their values.  The
+         *  selective search techniques chosen by setPruning may cut the
+         *  search short or reduce its depth; null-move pruning is tried
+         *  only if NULLOK.  A side to move with no legal move has lost.
+         *  Moves are made and undone on BOARD itself, which is restored on
+         *  return. */
+        int search(Board board, int depth, int alpha, int beta,
+                   boolean nullOK) {
+            int sense = board.turn() == WHITE ? 1 : -1;
+            if (board.winner() != null) {
+                return sense * staticScore(board);
+            }
+            if (stopped()) {
+                return 0;
+            }
+            if (depth == 0) {
+                return _quiescence ? quiesce(board, alpha, beta, 0)
+                    : sense * leafScore(board);
+            }
+            int sym = _symmetry ? board.canonicalSymmetry() : 0;
+            long key = board.symmetricKey(sym);
+            long entry = _table.entry(key);
+            if (_pvs && entry != 0
+                && TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry),
+                    bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT
+                    || bound == TranspositionTable.LOWER_BOUND
+                       && score >= beta
+                    || bound == TranspositionTable.UPPER_BOUND
+                       && score <= alpha) {
+                    _stats.countProbe(true, true);
+                    return score;
                 }
-                if (block == 1) {
-                    return -WILL_WIN_VALUE;
+            }
+            _stats.countProbe(entry != 0, false);
+
+            Square king = board.kingPosition();
+            boolean kingThreat = board.kingEscapeRoutes() > 0
+                || board.kingAttackers() >= 2;
+            int eval = _pruning == 0 || kingThreat ? 0
+                : sense * staticScore(board);
+            if ((_pruning & NULL_MOVE) != 0 && nullOK && !kingThreat
+                && depth >= NULL_MOVE_MIN_DEPTH && alpha + 1 == beta
+                && abs(beta) < WILL_WIN_VALUE && eval >= beta) {
+                board.passTurn();
+                int score = -search(board, depth - 1 - NULL_MOVE_REDUCTION,
+                                    -beta, -beta + 1, false);
+                board.passTurn();
+                if (score >= beta) {
+                    _stats.countNullMoveCutoff();
+                    return beta;
+                }
+            }
+
+            int[] moves = _moves[depth], scores = _scores[depth];
+            int n = board.legalMoves(board.turn(), moves, 0);
+            if (n == 0) {
+                return -WINNING_VALUE;
+            }
+            if (_ordering) {
+                orderMoves(board, moves, n, depth,
+                           fromTable(TranspositionTable.entryMove(entry),
+                                     sym));
+            }
+            int alpha0 = alpha;
+            int v = -INFTY;
+            int best = TranspositionTable.NO_MOVE;
+            for (int k = 0; k < n; k += 1) {
+                int mv = moves[k];
+                boolean quiet = k > 0 && !kingThreat
+                    && (_ordering ? scores[k] < KILLER_SCORE - 1
+                        : !board.isCapture(mv))
+                    && !nearKing(mv, king);
+                if (quiet && (_pruning & FUTILITY) != 0 && depth == 1
+                    && eval + FUTILITY_MARGIN <= alpha) {
+                    v = max(v, eval + FUTILITY_MARGIN);
+                    _stats.countFutilityPrune();
+                    continue;
+                }
+                board.makeMove(mv);
+                _stats.countNode();
+                if (wonBy(board, board.turn().opponent())) {
+                    board.undo();
+                    _table.store(key, Move.symmetric(mv, sym), WINNING_VALUE,
+                                 depth, TranspositionTable.EXACT);
+                    return WINNING_VALUE;
+                }
+                int score = 0;
+                boolean done = false;
+                if (quiet && (_pruning & LATE_MOVE_REDUCTIONS) != 0
+                    && depth >= REDUCTION_MIN_DEPTH
+                    && k >= UNREDUCED_MOVES) {
+                    score = -search(board, depth - 1 - LATE_MOVE_REDUCTION,
+                                    -alpha - 1, -alpha, true);
+                    done = score <= alpha;
+                    _stats.countReduction(!done);
+                }
+                if (done) {
+                    assert quiet;
+                } else if (_pvs && k > 0) {
+                    score = -search(board, depth - 1, -alpha - 1, -alpha,
+                                    true);
+                    if (score > alpha && score < beta) {
+                        score = -search(board, depth - 1, -beta, -alpha,
+                                        true);
+                    }
+                } else {
+                    score = -search(board, depth - 1, -beta, -alpha, true);
                 }
+                board.undo();
+                if (score >= v) {
+                    v = score;
+                    best = mv;
+                }
+                alpha = max(alpha, v);
+                if (v >= beta) {
+                    _stats.countCutoff(k);
+                    if (!board.isCapture(mv)) {
+                        recordCutoff(mv, depth);
+                    }
+                    break;
+                }
+            }
+            if (best != TranspositionTable.NO_MOVE && !stopped()) {
+                _table.store(key, Move.symmetric(best, sym), v, depth,
+                             v <= alpha0 ? TranspositionTable.UPPER_BOUND
+                             : v >= beta ? TranspositionTable.LOWER_BOUND
+                             : TranspositionTable.EXACT);
             }
+
+            return v;
         }
 
+        /** Return the value of BOARD at a leaf of the search: its exact
+         *  value if it is in one of my tablebases, and otherwise its static
+         *  score.  Won positions are worth less the longer they take to
+         *  win. */
+        private int leafScore(Board board) {
+            int whites = board.pieceCount(WHITE),
+                blacks = board.pieceCount(BLACK);
+            if (_tablebases == null || whites >= _tablebases.length
+                || blacks >= _tablebases[whites].length
+                || _tablebases[whites][blacks] == null) {
+                return staticScore(board);
+            }
+            Tablebase table = _tablebases[whites][blacks];
+            int index = table.index(board, _whiteSqs[whites],
+                                    _blackSqs[blacks]);
+            int sense = board.turn() == WHITE ? 1 : -1;
+            switch (table.value(index)) {
+            case Tablebase.WIN:
+                return sense * (WILL_WIN_VALUE - table.distance(index));
+            case Tablebase.LOSS:
+                return -sense * (WILL_WIN_VALUE - table.distance(index));
+            default:
+                return 0;
+            }
+        }
 
-        int ret = 0;
+        /** Return true iff MV moves a piece to or from the row or column of
+         *  the square KING (if not null), so that it may open or close a
+         *  route from the king to the edge or take part in an attack on
+         *  the king, or moves the king itself. */
+        private boolean nearKing(int mv, Square king) {
+            if (king == null) {
+                return false;
+            }
+            int kingRow = king.row(), kingCol = king.col(),
+                from = Move.fromIndex(mv), to = Move.toIndex(mv);
+            return from / BOARD_SIZE == kingRow || from % BOARD_SIZE == kingCol
+                || to / BOARD_SIZE == kingRow || to % BOARD_SIZE == kingCol;
+        }
 
-        for (int i = 0; i < NUM_SQUARES; i++) {
-            if (board.get(sq(i)).equals(WHITE)) {
-                ret++;
-            } else if (board.get(sq(i)).equals(BLACK)) {
-                ret--;
+        /** Return true iff I am part of a pondering search that has been
+         *  stopped, or have passed my deadline, so that my results are
+         *  meaningless.  The clock is read once every POLL_NODES
+         *  calls. */
+        private boolean stopped() {
+            if (!_timedOut && _deadline != Long.MAX_VALUE
+                && ++_polls % POLL_NODES == 0
+                && System.nanoTime() >= _deadline) {
+                _timedOut = true;
             }
+            return _timedOut || _ponder != null && _ponder._stopped;
         }
 
-        return ret;
+        /** Sort the N MOVES of BOARD, searched at depth DEPTH, so that
+         *  the most promising come first: TTMOVE (the move recorded for
+         *  BOARD in the transposition table, or NO_MOVE), then captures,
+         *  then killer moves, then the rest by history score. */
+        private void orderMoves(Board board, int[] moves, int n, int depth,
+                                int ttMove) {
+            int[] scores = _scores[depth], killers = _killers[depth];
+            for (int k = 0; k < n; k += 1) {
+                int mv = moves[k];
+                if (mv == ttMove) {
+                    scores[k] = TT_MOVE_SCORE;
+                } else if (board.isCapture(mv)) {
+                    scores[k] = CAPTURE_SCORE;
+                } else if (mv == killers[0]) {
+                    scores[k] = KILLER_SCORE;
+                } else if (mv == killers[1]) {
+                    scores[k] = KILLER_SCORE - 1;
+                } else {
+                    scores[k] =
+                        _history[Move.fromIndex(mv)][Move.toIndex(mv)];
+                }
+            }
+            for (int k = 1; k < n; k += 1) {
+                int mv = moves[k], score = scores[k];
+                int j;
+                for (j = k; j > 0 && scores[j - 1] < score; j -= 1) {
+                    moves[j] = moves[j - 1];
+                    scores[j] = scores[j - 1];
+                }
+                moves[j] = mv;
+                scores[j] = score;
+            }
+        }
 
+        /** Return the value of BOARD, with ALPHA and BETA as for search,
+         *  searching only captures, so that static scores are taken only
+         *  where no exchange is under way.  The side to move may stand pat
+         *  on the static score or try its captures.  Open routes from the
+         *  king to the edge are settled directly: white wins if it is
+         *  white's move or if there are two routes, and otherwise black
+         *  must block the route or capture, or lose.  PLY is the number of
+         *  plies of quiescence search so far. */
+        private int quiesce(Board board, int alpha, int beta, int ply) {
+            int sense = board.turn() == WHITE ? 1 : -1;
+            if (board.winner() != null) {
+                return sense * staticScore(board);
+            }
+            if (stopped()) {
+                return 0;
+            }
+            int routes = board.kingEscapeRoutes();
+            if (routes > 0 && (sense == 1 || routes > 1)) {
+                return sense * WILL_WIN_VALUE;
+            }
+            if (ply == QUIESCENCE_PLIES) {
+                return sense * leafScore(board);
+            }
+            int[] moves = _quietMoves[ply];
+            int v, n;
+            if (routes > 0) {
+                v = -INFTY;
+                n = 0;
+                int all = board.legalMoves(BLACK, moves, 0);
+                for (int k = 0; k < all; k += 1) {
+                    if (board.blocksKingEscape(moves[k])
+                        || board.isCapture(moves[k])) {
+                        moves[n++] = moves[k];
+                    }
+                }
+                if (n == 0) {
+                    return -WILL_WIN_VALUE;
+                }
+            } else {
+                v = sense * leafScore(board);
+                if (v >= beta) {
+                    return v;
+                }
+                alpha = max(alpha, v);
+                n = board.captureMoves(board.turn(), moves, 0);
+            }
+
+            for (int k = 0; k < n; k += 1) {
+                board.makeMove(moves[k]);
+                _stats.countQuiescenceNode();
+                int score = -quiesce(board, -beta, -alpha, ply + 1);
+                board.undo();
+                if (score > v) {
+                    v = score;
+                }
+                alpha = max(alpha, v);
+                if (v >= beta) {
+                    break;
+                }
+            }
+            return v;
+        }
+
+        /** Record that the quiet move MV caused a cutoff at depth
+         *  DEPTH. */
+        private void recordCutoff(int mv, int depth) {
+            int[] killers = _killers[depth];
+            if (killers[0] != mv) {
+                killers[1] = killers[0];
+                killers[0] = mv;
+            }
+            int[] history = _history[Move.fromIndex(mv)];
+            int to = Move.toIndex(mv);
+            history[to] = min(history[to] + depth * depth, HISTORY_LIMIT);
+        }
+
+        /** Statistics of the positions this searcher has generated. */
+        private final SearchStats _stats = new SearchStats();
+        /** The pondering search I am part of, or null if none. */
+        private final Ponder _ponder;
+        /** Value of System.nanoTime() at which I stop searching, or
+         *  Long.MAX_VALUE if none. */
+        private long _deadline = Long.MAX_VALUE;
+        /** True iff I have passed _deadline. */
+        private boolean _timedOut;
+        /** Number of calls of stopped, starting so that the first call
+         *  reads the clock. */
+        private int _polls = POLL_NODES - 1;
+        /** _moves[d] holds the moves being tried at a node with d
+         *  plies remaining, and _scores[d] their ordering scores. */
+        private final int[][] _moves, _scores;
+        /** _quietMoves[p] holds the moves generated at ply p of
+         *  quiescence search. */
+        private final int[][] _quietMoves;
+        /** _killers[d] holds the two most recent quiet moves that caused
+         *  cutoffs at depth d. */
+        private final int[][] _killers;
+        /** _history[f][t] measures how often the quiet move from the
+         *  square indexed f to that indexed t has caused cutoffs. */
+        private final int[][] _history = new int[NUM_SQUARES][NUM_SQUARES];
+        /** _whiteSqs[n] and _blackSqs[n] hold the squares of n white and
+         *  n black pieces in tablebase probes (see leafScore). */
+        private final int[][] _whiteSqs = pieceSquares(),
+            _blackSqs = pieceSquares();
     }
 
-    /** return a list of squares around sq.
-     * @param sq my square */
-    private ArrayList<Square> surroundedsquare(Square sq) {
-        ArrayList<Square> ss = new ArrayList<Square>();
-        int col = sq.col();
-        int row = sq.row();
-        if (exists(col, row + 1)) {
-            ss.add(sq(col, row + 1));
+    /** Return an array whose element n is an array of n ints, for n up
+     *  to Tablebase.MAX_PIECES. */
+    private static int[][] pieceSquares() {
+        int[][] result = new int[Tablebase.MAX_PIECES + 1][];
+        for (int n = 0; n < result.length; n += 1) {
+            result[n] = new int[n];
         }
-        if (exists(col + 1, row)) {
-            ss.add(sq(col + 1, row));
+        return result;
+    }
+
+    /** Return true iff the last move on BOARD, made by MOVER, won the
+     *  game by moving the king to safety or capturing it. */
+    private static boolean wonBy(Board board, Piece mover) {
+        Square king = board.kingPosition();
+        return mover == WHITE ? Board.isEscape(king) : king == null;
+    }
+
+    /** Return the depth to which I search BOARD when choosing my
+     *  move. */
+    private int maxDepth(Board board) {
+        return _depth;
+    }
+
+
+    /** Return a heuristic value for BOARD: a win or loss if the king has
+     *  escaped, been captured, or can be captured, and otherwise its value
+     *  under my Evaluation, which takes constant time. */
+    int staticScore(Board board) {
+        Square kingsq = board.kingPosition();
+        if (kingsq == null) {
+            return -WINNING_VALUE;
         }
-        if (exists(col, row - 1)) {
-            ss.add(sq(col, row - 1));
+        if (Board.isEscape(kingsq)) {
+            return WINNING_VALUE;
         }
-        if (exists(col - 1, row)) {
-            ss.add(sq(col - 1, row));
+        if (!Board.mustSurroundKing(kingsq) && board.kingAttackers() > 0) {
+            return -WILL_WIN_VALUE;
         }
-        return ss;
+        return _evaluation.score(board);
     }
 
+    /** Number of threads used by findMove. */
+    private final int _threads;
+
+    /** Opening book consulted before searching, or null if none. */
+    private final OpeningBook _book;
+
+    /** Endgame tablebases indexed by numbers of white and black pieces
+     *  (see Tablebase.load), or null if none. */
+    private final Tablebase[][] _tablebases;
+
+    /** Thread pool for parallel searches, or null if not yet needed. */
+    private ForkJoinPool _pool;
+
+    /** Statistics of the last findMove, or null if none. */
+    private volatile SearchStats _lastStats;
+
+    /** True iff I log the statistics of my searches. */
+    private boolean _logStats;
+
+    /** True iff findMove orders moves heuristically. */
+    private boolean _ordering = true;
+
+    /** True iff findMove uses principal variation search. */
+    private boolean _pvs = true;
+
+    /** Selective search techniques used (see setPruning). */
+    private int _pruning = ALL_PRUNING;
+
+    /** Evaluation of the leaves of my searches. */
+    private Evaluation _evaluation = Evaluation.DEFAULT;
+
+    /** Depth of the searches for my moves. */
+    private int _depth = DEPTH;
+
+    /** True iff symmetric positions share table entries. */
+    private boolean _symmetry = true;
+
+    /** True iff findMove extends its leaves with quiescence search. */
+    private boolean _quiescence = true;
+
+    /** True iff I ponder after each of my moves (see setPondering). */
+    private boolean _pondering;
+
+    /** The current pondering search, or null if none. */
+    private Ponder _ponder;
+
+    /** Thread that runs pondering searches, or null if not yet
+     *  needed. */
+    private ExecutorService _ponderThread;
+
+    /** Best moves found by my searches, shared by all search threads. */
+    private final TranspositionTable _table =
+        new TranspositionTable(TABLE_LOG_SIZE);
+
 }
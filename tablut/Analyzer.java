@@ -0,0 +1,232 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Offline analysis of a file of positions by the AI, run by
+ *  tablut.Main's --analyze option.  Each non-blank line of the input that
+ *  does not start with "#" describes one position, either in the format
+ *  of Board.encodedBoard or as a sequence of moves from the initial
+ *  position separated by blanks (e.g., "e3-c e2-c"); "-" alone denotes
+ *  the initial position.  Each position is searched by its own AI, and
+ *  the results are appended to the output file as they are found, in
+ *  whatever order the worker threads finish them, as lines of
+ *  tab-separated fields:
+ *      LINE  MOVE  SCORE  DEPTH  NODES  PV
+ *  where LINE is the number (from 1) of the input line, SCORE is the value
+ *  of MOVE from the point of view of the side to move, and PV is the
+ *  principal variation, as moves separated by blanks.  A position that
+ *  cannot be read or has no move yields a line of the form
+ *      LINE  error  MESSAGE
+ *  If the output file already exists, the lines it reports on are
+ *  skipped, so that an interrupted analysis may be resumed by running it
+ *  again; a partly written last line is discarded.
+ *  @author Mingyan Zou
+ */
+class Analyzer {
+
+    /** Default search depth. */
+    static final int DEPTH = 4;
+
+    /** Search depth limit when searches are timed. */
+    static final int TIMED_DEPTH = 32;
+
+    /** An Analyzer that searches each position to DEPTH plies, or (if
+     *  TIME > 0) for about TIME milliseconds (see AI.findMove), using
+     *  THREADS worker threads. */
+    Analyzer(int depth, long time, int threads) {
+        _depth = depth;
+        _time = time > 0 ? time * 1000000L : Long.MAX_VALUE;
+        _threads = Math.max(1, threads);
+    }
+
+    /** Analyze the positions in the file named INPUT, appending the
+     *  results to the file named OUTPUT and skipping any positions it
+     *  already reports on.  Returns the number of positions analyzed. */
+    int analyze(String input, String output) throws IOException {
+        BitSet done = finished(Paths.get(output));
+        int count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(input));
+             PrintWriter out =
+                 new PrintWriter(new FileWriter(output, true))) {
+            _input = in;
+            _output = out;
+            _done = done;
+            _lineNumber = 0;
+            ExecutorService pool = Executors.newFixedThreadPool(_threads);
+            try {
+                List<Future<Integer>> workers = new ArrayList<>();
+                for (int i = 0; i < _threads; i += 1) {
+                    workers.add(pool.submit(this::work));
+                }
+                for (Future<Integer> worker : workers) {
+                    count += worker.get();
+                }
+            } catch (InterruptedException excp) {
+                throw new Error("unexpected interrupt");
+            } catch (ExecutionException excp) {
+                if (excp.getCause() instanceof IOException) {
+                    throw (IOException) excp.getCause();
+                }
+                throw new IllegalStateException(excp.getCause());
+            } finally {
+                pool.shutdown();
+            }
+            if (out.checkError()) {
+                throw new IOException("error writing " + output);
+            }
+        }
+        return count;
+    }
+
+    /** Analyze positions from the input until there are no more, and
+     *  return the number analyzed. */
+    private int work() throws IOException {
+        int count;
+        for (count = 0; true; count += 1) {
+            int lineNumber;
+            Board board;
+            String error;
+            synchronized (this) {
+                String line = nextLine();
+                if (line == null) {
+                    return count;
+                }
+                lineNumber = _lineNumber;
+                board = new Board();
+                error = setUp(board, line);
+            }
+            String result =
+                error != null ? "error\t" + error : analyze(board);
+            synchronized (this) {
+                _output.printf("%d\t%s%n", lineNumber, result);
+                _output.flush();
+            }
+        }
+    }
+
+    /** Return the next line of input that describes a position not
+     *  already analyzed, setting _lineNumber to its number, or null if
+     *  there is none. */
+    private String nextLine() throws IOException {
+        while (true) {
+            String line = _input.readLine();
+            if (line == null) {
+                return null;
+            }
+            _lineNumber += 1;
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")
+                && !_done.get(_lineNumber)) {
+                return line;
+            }
+        }
+    }
+
+    /** Set BOARD to the position described by LINE (see the class
+     *  comment).  Returns null if successful, and otherwise a
+     *  description of the error. */
+    private static String setUp(Board board, String line) {
+        if (line.length() == Square.NUM_SQUARES + 1
+            && line.matches("[WB][-WBK]+")) {
+            try {
+                board.setPosition(line);
+            } catch (IllegalArgumentException excp) {
+                return excp.getMessage();
+            }
+        } else if (!line.equals("-")) {
+            for (String token : line.split("\\s+")) {
+                Move mv = Move.mv(token);
+                if (mv == null || board.winner() != null
+                    || !board.isLegal(mv)) {
+                    return "illegal move: " + token;
+                }
+                board.makeMove(mv);
+            }
+        }
+        if (board.winner() != null) {
+            return "game over";
+        } else if (!board.hasMove(board.turn())) {
+            return "no legal move";
+        }
+        return null;
+    }
+
+    /** Search BOARD and return the result, formatted as for the output
+     *  file, without the line number. */
+    private String analyze(Board board) {
+        AI ai = new AI(1);
+        Move move = ai.findMove(board, _depth, _time);
+        SearchStats stats = ai.lastStats();
+        StringBuilder pv = new StringBuilder();
+        for (Move mv : ai.principalVariation(board, stats.depth())) {
+            pv.append(pv.length() == 0 ? "" : " ").append(mv);
+        }
+        return String.format("%s\t%d\t%d\t%d\t%s", move, stats.score(),
+                             stats.depth(), stats.nodes(), pv);
+    }
+
+    /** Return the set of input line numbers reported on in the output
+     *  file OUTPUT, if it exists, first removing any incomplete last
+     *  line from it. */
+    private static BitSet finished(Path output) throws IOException {
+        BitSet done = new BitSet();
+        if (!Files.exists(output)) {
+            return done;
+        }
+        try (RandomAccessFile file =
+             new RandomAccessFile(output.toFile(), "rw")) {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                end -= 1;
+            }
+            file.setLength(end);
+        }
+        for (String line
+                 : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            try {
+                done.set(Integer.parseInt(line.substring(0, tab)));
+            } catch (NumberFormatException
+                     | StringIndexOutOfBoundsException excp) {
+                /* Ignore malformed lines. */
+            }
+        }
+        return done;
+    }
+
+    /** Maximum search depth. */
+    private final int _depth;
+    /** Time allowed for each search, in nanoseconds. */
+    private final long _time;
+    /** Number of worker threads. */
+    private final int _threads;
+    /** The input, read by all workers in turn. */
+    private BufferedReader _input;
+    /** Number of the last line read from _input. */
+    private int _lineNumber;
+    /** The output, written by all workers in turn. */
+    private PrintWriter _output;
+    /** Input line numbers already reported in the output. */
+    private BitSet _done;
+
+}
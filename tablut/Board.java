@@ -2,46 +2,203 @@ package tablut;
 
 
 import java.util.List;
-import java.util.Stack;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Formatter;
 import java.util.ArrayList;
+import java.util.Random;
+import java.util.Arrays;
 
 
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
+import static tablut.Utils.error;
 
 
-/** The state of a Tablut Game.
+/** The state of a Tablut Game, played under the rules of the current
+ *  Variant.
  *  @author Mingyan Zou
  */
 class Board {
 
+    /** The variant being played. */
+    static final Variant VARIANT = Variant.current();
+
     /** The number of squares on a side of the board. */
-    static final int SIZE = 9;
+    static final int SIZE = BOARD_SIZE;
 
     /** The throne (or castle) square and its four surrounding squares.. */
-    static final Square THRONE = sq(4, 4),
-        NTHRONE = sq(4, 5),
-        STHRONE = sq(4, 3),
-        WTHRONE = sq(3, 4),
-        ETHRONE = sq(5, 4);
+    static final Square THRONE = sq(SIZE / 2, SIZE / 2),
+        NTHRONE = sq(SIZE / 2, SIZE / 2 + 1),
+        STHRONE = sq(SIZE / 2, SIZE / 2 - 1),
+        WTHRONE = sq(SIZE / 2 - 1, SIZE / 2),
+        ETHRONE = sq(SIZE / 2 + 1, SIZE / 2);
+
+    /** The rules of VARIANT, as constants so that the tests of those
+     *  that do not apply disappear from compiled code. */
+    private static final boolean
+        CORNER_ESCAPE = VARIANT.cornerEscape(),
+        ARMED_KING = VARIANT.armedKing(),
+        STRONG_KING = VARIANT.strongKing();
+
+    /** When the throne is hostile. */
+    private static final Variant.Throne THRONE_RULE = VARIANT.throne();
+
+    /** Index of THRONE. */
+    private static final int THRONE_INDEX = THRONE.index();
+
+    /** THRONE_AREA[i] is true iff the square with index i is the throne
+     *  or next to it. */
+    private static final boolean[] THRONE_AREA = new boolean[NUM_SQUARES];
+
+    /** SURROUND_KING[i] is true iff the king on the square with index i
+     *  is captured only when hostile squares surround it on all four
+     *  sides. */
+    private static final boolean[] SURROUND_KING = new boolean[NUM_SQUARES];
+
+    /** ESCAPES[i] is true iff the king wins by reaching the square with
+     *  index i: a square on the edge, or a corner under corner escape. */
+    private static final boolean[] ESCAPES = new boolean[NUM_SQUARES];
+
+    /** CORNERS[i] is true iff the square with index i is a corner. */
+    private static final boolean[] CORNERS = new boolean[NUM_SQUARES];
+
+    /** ESCAPE_DISTANCE[i] is the least number of rook steps from the
+     *  square with index i to a square in ESCAPES. */
+    private static final int[] ESCAPE_DISTANCE = new int[NUM_SQUARES];
+
+    /** Black pieces at most this distance (see Square.distance) from the
+     *  king form its cordon (see kingCordon). */
+    static final int CORDON_RADIUS = 2;
+
+    /** CORDON[i] holds the indices of the squares that form the cordon of
+     *  a king on the square with index i. */
+    private static final int[][] CORDON = new int[NUM_SQUARES][];
+
+    /** ESCAPE_RAYS[i][d] is true iff the king on the square with index i
+     *  would escape by moving to the far end of the rook ray in direction
+     *  d (see Square.ROOK_SQUARES), or has escaped already if the ray is
+     *  empty. */
+    private static final boolean[][] ESCAPE_RAYS =
+        new boolean[NUM_SQUARES][4];
+
+    /** For each square next to the throne, with index i,
+     *  THRONE_PARTNERS[i] holds the indices of the other three squares
+     *  next to the throne.  A white piece on square i is captured against
+     *  the occupied throne only if these all hold black pieces.  For other
+     *  squares, it is empty. */
+    private static final int[][] THRONE_PARTNERS = new int[NUM_SQUARES][];
+
+    static {
+        THRONE_AREA[THRONE.index()] = true;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            THRONE_PARTNERS[i] = new int[0];
+        }
+        for (int adj : NEIGHBORS[THRONE.index()]) {
+            THRONE_AREA[adj] = true;
+            int[] partners = new int[3];
+            int k = 0;
+            for (int other : NEIGHBORS[THRONE.index()]) {
+                if (other != adj) {
+                    partners[k++] = other;
+                }
+            }
+            THRONE_PARTNERS[adj] = partners;
+        }
+        for (Square s : SQUARE_LIST) {
+            int i = s.index();
+            SURROUND_KING[i] = STRONG_KING || THRONE_AREA[i];
+            CORNERS[i] = s.isCorner();
+            ESCAPES[i] = CORNER_ESCAPE ? s.isCorner() : s.isEdge();
+            int dcol = Math.min(s.col(), SIZE - 1 - s.col()),
+                drow = Math.min(s.row(), SIZE - 1 - s.row());
+            ESCAPE_DISTANCE[i] = CORNER_ESCAPE ? dcol + drow
+                : Math.min(dcol, drow);
+            SqList cordon = new SqList();
+            for (Square t : SQUARE_LIST) {
+                if (t != s && t.distance(s) <= CORDON_RADIUS) {
+                    cordon.add(t);
+                }
+            }
+            CORDON[i] = new int[cordon.size()];
+            for (int k = 0; k < cordon.size(); k += 1) {
+                CORDON[i][k] = cordon.get(k).index();
+            }
+        }
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                SqList ray = ROOK_SQUARES[i][d];
+                ESCAPE_RAYS[i][d] = ray.isEmpty() ? ESCAPES[i]
+                    : ESCAPES[ray.get(ray.size() - 1).index()];
+            }
+        }
+    }
+
+    /** An upper bound on the number of legal moves for one side in any
+     *  position.  Each empty square is the destination of at most four
+     *  moves (one along each rook ray). */
+    static final int MAX_MOVES = 4 * NUM_SQUARES;
+
+    /** Random seed for ZOBRIST, fixed so that position keys are the same
+     *  from run to run. */
+    private static final long ZOBRIST_SEED = 0x7AB1;
+
+    /** ZOBRIST[p][i] is the contribution to positionKey() of piece
+     *  number p (its ordinal) on the square with index i.  Empty squares
+     *  contribute nothing. */
+    private static final long[][] ZOBRIST =
+        new long[Piece.values().length][NUM_SQUARES];
+
+    /** The contribution to positionKey() of black being on move. */
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        Random gen = new Random(ZOBRIST_SEED);
+        for (Piece p : Piece.values()) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                ZOBRIST[p.ordinal()][i] = p == EMPTY ? 0 : gen.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = gen.nextLong();
+    }
+
+    /** Layout of the entries of _undoLog, each of which records what undo
+     *  needs in order to reverse one move: up to MAX_CAPTURES capture
+     *  records of CAPTURE_BITS bits each (see capture; 8 on the 9x9
+     *  board), then the ordinal of the winner before the move (0 if none)
+     *  at WINNER_SHIFT, and then REPEATED_BIT if the position before the
+     *  move was a repeat. */
+    private static final int
+        CAPTURE_BITS =
+            Integer.SIZE - Integer.numberOfLeadingZeros(NUM_SQUARES) + 1,
+        CAPTURE_MASK = (1 << CAPTURE_BITS) - 1,
+        KING_BIT = 1 << (CAPTURE_BITS - 1),
+        MAX_CAPTURES = 3,
+        WINNER_SHIFT = MAX_CAPTURES * CAPTURE_BITS,
+        WINNER_MASK = 3,
+        REPEATED_BIT = 1 << (WINNER_SHIFT + 2);
+
+    /** Initial capacity of _undoLog. */
+    private static final int INITIAL_UNDO_SIZE = 64;
+
+    /** All Pieces, by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
 
     /** Initial positions of attackers. */
-    static final Square[] INITIAL_ATTACKERS = {
-        sq(0, 3), sq(0, 4), sq(0, 5), sq(1, 4),
-        sq(8, 3), sq(8, 4), sq(8, 5), sq(7, 4),
-        sq(3, 0), sq(4, 0), sq(5, 0), sq(4, 1),
-        sq(3, 8), sq(4, 8), sq(5, 8), sq(4, 7)
-    };
+    static final Square[] INITIAL_ATTACKERS = initialSquares(BLACK);
 
     /** Initial positions of defenders of the king. */
-    static final Square[] INITIAL_DEFENDERS = {
-        NTHRONE, ETHRONE, STHRONE, WTHRONE,
-        sq(4, 6), sq(4, 2), sq(2, 4), sq(6, 4)
-    };
+    static final Square[] INITIAL_DEFENDERS = initialSquares(WHITE);
+
+    /** Return the squares on which VARIANT places P initially. */
+    private static Square[] initialSquares(Piece p) {
+        List<Square> result = new ArrayList<>();
+        for (Square s : SQUARE_LIST) {
+            if (VARIANT.initial(s.col(), s.row()) == p) {
+                result.add(s);
+            }
+        }
+        return result.toArray(new Square[result.size()]);
+    }
 
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
@@ -61,35 +218,42 @@ class Board {
         }
 
         _turn = model.turn();
-        _record = new Stack<String>();
-        _moverecord = new Stack<Move>();
         _winner = model.winner();
         _moveCount = model._moveCount;
 
         _moveLimit = model._moveLimit;
-        _board = new HashMap<Square, Piece>();
-        _board.putAll(model._board);
-
-        for (String r: model._record) {
-            _record.add(r);
-        }
-        for (Move mv: model._moverecord) {
-            _moverecord.add(mv);
-        }
-
-
-
+        _board = model._board.clone();
+        _keys = model._keys.clone();
+        _pieceCounts = model._pieceCounts.clone();
+        _king = model._king;
+        _kingAttackers = model._kingAttackers;
+        _kingCordon = model._kingCordon;
+        _occupied = model._occupied.clone();
+        _repeated = model._repeated;
+        _undoLog = Arrays.copyOf(model._undoLog, model._undoLog.length);
+        _moveLog = Arrays.copyOf(model._moveLog, model._moveLog.length);
+        _keyLog = Arrays.copyOf(model._keyLog, model._keyLog.length);
     }
 
     /** Clears the board to the initial position. */
     void init() {
         _moveCount = 0;
         _turn = BLACK;
+        _keys = new long[SYMMETRIES];
+        Arrays.fill(_keys, BLACK_TO_MOVE);
         _repeated = false;
-        _board = new HashMap<Square, Piece>();
-        _record = new Stack<String>();
+        _board = new Piece[NUM_SQUARES];
+        Arrays.fill(_board, EMPTY);
+        _pieceCounts = new int[PIECES.length];
+        _pieceCounts[EMPTY.ordinal()] = NUM_SQUARES;
+        _king = null;
+        _kingAttackers = 0;
+        _kingCordon = 0;
+        _occupied = new long[BITBOARD_WORDS];
         _moveLimit = Integer.MAX_VALUE;
-        _moverecord = new Stack<Move>();
+        _undoLog = new int[INITIAL_UNDO_SIZE];
+        _moveLog = new int[INITIAL_UNDO_SIZE];
+        _keyLog = new long[INITIAL_UNDO_SIZE];
         _winner = null;
         for (Square s: INITIAL_ATTACKERS) {
             put(BLACK, s);
@@ -98,13 +262,6 @@ class Board {
             put(WHITE, s);
         }
         put(KING, THRONE);
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                if (!_board.containsKey(sq(i, j))) {
-                    put(EMPTY, sq(i, j));
-                }
-            }
-        }
     }
 
     /** Set the move limit to LIM.  It is an error if 2*LIM <= moveCount().
@@ -117,6 +274,12 @@ class Board {
         }
     }
 
+    /** Return the number of moves (counted as by moveCount) after which
+     *  no moves are legal, or Integer.MAX_VALUE if there is no limit. */
+    int moveLimit() {
+        return _moveLimit;
+    }
+
     /** Return a Piece representing whose move it is (WHITE or BLACK). */
     Piece turn() {
         return _turn;
@@ -136,18 +299,24 @@ class Board {
 
 
 
-    /** Record current position and set winner() next mover if the current
-     *  position is a repeat. */
+    /** Record the key of the current position, taken during a move after
+     *  the moving piece has moved but before any capture and with the
+     *  mover still on move, and set winner() to the mover's opponent if
+     *  it repeats a position so recorded earlier.  Only the positions
+     *  since the last capture need be compared, since a position with
+     *  more pieces cannot recur. */
     private void checkRepeated() {
-        int r = _record.search(this.encodedBoard());
-        _record.push(this.encodedBoard());
-        if (r == -1) {
-            _repeated = false;
-        } else {
-            _repeated = true;
-            _winner = turn().opponent();
+        long key = _keys[0];
+        _keyLog[_moveCount] = key;
+        _repeated = false;
+        for (int k = _moveCount - 1;
+             k >= 0 && (_undoLog[k] & CAPTURE_MASK) == 0; k -= 1) {
+            if (_keyLog[k] == key) {
+                _repeated = true;
+                _winner = turn().opponent();
+                return;
+            }
         }
-
     }
 
 
@@ -157,28 +326,160 @@ class Board {
         return _moveCount;
     }
 
-    /** Return location of the king. */
+    /** Return a new list of the moves counted by moveCount, in the order
+     *  they were made. */
+    List<Move> moveHistory() {
+        List<Move> moves = new ArrayList<>(_moveCount);
+        for (int k = 0; k < _moveCount; k += 1) {
+            moves.add(mv(_moveLog[k]));
+        }
+        return moves;
+    }
+
+    /** Return location of the king, or null if it has been captured. */
     Square kingPosition() {
-        for (int i = 0; i < NUM_SQUARES; i++) {
-            if (get(sq(i)).equals(KING)) {
-                return sq(i);
+        return _king;
+    }
+
+    /** Return the number of pieces of type P (WHITE does not include the
+     *  king) on the board. */
+    int pieceCount(Piece p) {
+        return _pieceCounts[p.ordinal()];
+    }
+
+    /** Store the indices of the squares holding P, in increasing order,
+     *  in SQUARES[0] ..., which must have room for pieceCount(P) of them,
+     *  and return their number.  Only occupied squares are examined. */
+    int squaresOf(Piece p, int[] squares) {
+        int n = 0;
+        for (int w = 0; w < _occupied.length; w += 1) {
+            for (long bits = _occupied[w]; bits != 0; bits &= bits - 1) {
+                int i = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if (_board[i] == p) {
+                    squares[n++] = i;
+                }
             }
         }
+        return n;
+    }
+
+    /** Return the number of black pieces orthogonally adjacent to the
+     *  king, or 0 if there is no king. */
+    int kingAttackers() {
+        return _kingAttackers;
+    }
 
-        return null;
+    /** Return the number of black pieces in the king's cordon: those at
+     *  most CORDON_RADIUS rows and columns from it.  This is 0 if there
+     *  is no king. */
+    int kingCordon() {
+        return _kingCordon;
+    }
+
+    /** Return the least number of steps along rows and columns from the
+     *  king to a square where it escapes (see isEscape), ignoring the
+     *  pieces in its way, or 0 if there is no king. */
+    int kingEscapeDistance() {
+        return _king == null ? 0 : ESCAPE_DISTANCE[_king.index()];
+    }
+
+    /** Return the number of directions in which the king could move
+     *  along an empty row or column to a square where it escapes (see
+     *  isEscape). */
+    int kingEscapeRoutes() {
+        if (_king == null) {
+            return 0;
+        }
+        int k = _king.index(), routes = 0;
+        for (int d = 0; d < 4; d += 1) {
+            if (ESCAPE_RAYS[k][d] && isEmpty(RAY_MASKS[k][d])) {
+                routes += 1;
+            }
+        }
+        return routes;
+    }
+
+    /** Return true iff the move encoded as MOVE (see Move.code) ends on
+     *  one of the king's open escape routes (see kingEscapeRoutes), and
+     *  so blocks it. */
+    boolean blocksKingEscape(int move) {
+        if (_king == null) {
+            return false;
+        }
+        int to = Move.toIndex(move), k = _king.index();
+        for (int d = 0; d < 4; d += 1) {
+            long[] ray = RAY_MASKS[k][d];
+            if ((ray[to / Long.SIZE] & (1L << to)) != 0) {
+                return ESCAPE_RAYS[k][d] && isEmpty(ray);
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff none of the squares in the bitboard MASK (see
+     *  Square.RAY_MASKS) is occupied. */
+    private boolean isEmpty(long[] mask) {
+        for (int w = 0; w < BITBOARD_WORDS; w += 1) {
+            if ((mask[w] & _occupied[w]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the number of squares to which the king could move, ignoring
+     *  the move limit, or 0 if there is no king. */
+    int kingMobility() {
+        if (_king == null) {
+            return 0;
+        }
+        int k = _king.index(), mobility = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int blocker = nearestOccupied(RAY_MASKS[k][d], d <= 1);
+            if (blocker < 0) {
+                mobility += ROOK_SQUARES[k][d].size();
+            } else {
+                int step = d % 2 == 0 ? SIZE : 1;
+                mobility += Math.abs(blocker - k) / step - 1;
+            }
+        }
+        return mobility;
+    }
+
+    /** Return the index of the occupied square in the bitboard MASK with
+     *  the lowest index if LOWEST, and otherwise with the highest, or -1
+     *  if no square in MASK is occupied. */
+    private int nearestOccupied(long[] mask, boolean lowest) {
+        if (lowest) {
+            for (int w = 0; w < BITBOARD_WORDS; w += 1) {
+                long bits = mask[w] & _occupied[w];
+                if (bits != 0) {
+                    return w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                }
+            }
+        } else {
+            for (int w = BITBOARD_WORDS - 1; w >= 0; w -= 1) {
+                long bits = mask[w] & _occupied[w];
+                if (bits != 0) {
+                    return (w + 1) * Long.SIZE - 1
+                        - Long.numberOfLeadingZeros(bits);
+                }
+            }
+        }
+        return -1;
     }
 
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return get(s.col(), s.row());
+        return _board[s.index()];
     }
 
     /** Return the contents of the square at (COL, ROW), where
-     *  0 <= COL, ROW <= 9. */
+     *  0 <= COL, ROW < SIZE. */
     final Piece get(int col, int row) {
-        assert 0 <= col && col <= 9 && row >= 0 && row <= 9
+        assert 0 <= col && col < SIZE && row >= 0 && row < SIZE
                 : "wrong cols and rows";
-        return _board.get(sq(col, row));
+        return _board[sq(col, row).index()];
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -189,22 +490,50 @@ class Board {
     /** Set square S to P. */
 
     final void put(Piece p, Square s) {
-        if (get(s) == null) {
-            _board.put(s, p);
+        int i = s.index();
+        Piece old = _board[i];
+        _board[i] = p;
+        long[] oldKeys = ZOBRIST[old.ordinal()], newKeys = ZOBRIST[p.ordinal()];
+        for (int t = 0; t < SYMMETRIES; t += 1) {
+            int j = SYMMETRY[t][i];
+            _keys[t] ^= oldKeys[j] ^ newKeys[j];
+        }
+        _pieceCounts[old.ordinal()] -= 1;
+        _pieceCounts[p.ordinal()] += 1;
+        if (p == EMPTY) {
+            _occupied[i / Long.SIZE] &= ~(1L << i);
         } else {
-            _board.replace(s, p);
+            _occupied[i / Long.SIZE] |= 1L << i;
         }
-    }
-
-
-    /** Set square S to P and record for undoing. */
-    final void revPut(Piece p, Square s) {
-        put(p, s);
-        checkRepeated();
-
 
+        if (old == KING && _king == s) {
+            _king = null;
+            _kingAttackers = _kingCordon = 0;
+        }
+        if (p == KING) {
+            _king = s;
+            _kingAttackers = _kingCordon = 0;
+            for (int adj : NEIGHBORS[i]) {
+                if (adj >= 0 && _board[adj] == BLACK) {
+                    _kingAttackers += 1;
+                }
+            }
+            for (int near : CORDON[i]) {
+                if (_board[near] == BLACK) {
+                    _kingCordon += 1;
+                }
+            }
+        } else if (_king != null && (p == BLACK) != (old == BLACK)
+                   && s.distance(_king) <= CORDON_RADIUS) {
+            int change = p == BLACK ? 1 : -1;
+            _kingCordon += change;
+            if (s.adjacent(_king)) {
+                _kingAttackers += change;
+            }
+        }
     }
 
+
     /** Set square COL ROW to P. */
     final void put(Piece p, char col, char row) {
         put(p, sq(col - 'a', row - '1'));
@@ -226,7 +555,7 @@ class Board {
             }
             for (int i = 0; i < dis; i++) {
                 Square sq = sql.get(i);
-                if (!_board.get(sq).equals(EMPTY)) {
+                if (get(sq) != EMPTY) {
                     return false;
                 }
             }
@@ -247,26 +576,8 @@ class Board {
         if (!isLegal(from)) {
             return false;
         }
-        if (to.equals(THRONE)) {
-            if (!get(from).equals(KING)) {
-                return false;
-            }
-        } else if (moveCount() > _moveLimit) {
+        if (isRestricted(to.index()) && get(from) != KING) {
             return false;
-        } else if (!isUnblockedMove(from, to)) {
-            return false;
-        }
-        return true;
-    }
-
-    /** return true iff move is a legal move.
-     * @param from a square that I want to move from
-     * @param to a square that I want to move to.*/
-    boolean isLegal1(Square from, Square to) {
-        if (to.equals(THRONE)) {
-            if (!get(from).equals(KING)) {
-                return false;
-            }
         } else if (moveCount() > _moveLimit) {
             return false;
         } else if (!isUnblockedMove(from, to)) {
@@ -284,33 +595,44 @@ class Board {
     /** Move FROM-TO, assuming this is a legal move. */
     void makeMove(Square from, Square to) {
         assert isLegal(from, to);
+        makeMove(Move.code(from, to));
+    }
+
+    /** Make MOVE, encoded as by Move.code, assuming it is a legal
+     *  move. */
+    void makeMove(int move) {
+        if (_moveCount == _undoLog.length) {
+            _undoLog = Arrays.copyOf(_undoLog, 2 * _moveCount);
+            _moveLog = Arrays.copyOf(_moveLog, 2 * _moveCount);
+            _keyLog = Arrays.copyOf(_keyLog, 2 * _moveCount);
+        }
+        Square from = sq(Move.fromIndex(move)), to = sq(Move.toIndex(move));
+        int undoInfo = (_winner == null ? 0 : _winner.ordinal()) << WINNER_SHIFT
+            | (_repeated ? REPEATED_BIT : 0);
         put(get(from), to);
-        revPut(EMPTY, from);
-        _moverecord.push(mv(from, to));
-        if (kingPosition().isEdge()) {
+        put(EMPTY, from);
+        checkRepeated();
+        if (ESCAPES[kingPosition().index()]) {
             _winner = WHITE;
-            return;
-        }
-        if (exists(to.col(), to.row() + 2)) {
-            Square up = sq(to.col(), to.row() + 2);
-            capture(up, to);
-        }
-        if (exists(to.col() + 2, to.row())) {
-            Square right = sq(to.col() + 2, to.row());
-            capture(right, to);
-        }
-        if (exists(to.col(), to.row() - 2)) {
-            Square down = sq(to.col(), to.row() - 2);
-            capture(down, to);
-        }
-        if (exists(to.col() - 2, to.row())) {
-            Square left = sq(to.col() - 2, to.row());
-            capture(left, to);
-        }
-        if (kingPosition() == null) {
-            _winner = BLACK;
+        } else if (ARMED_KING || get(to) != KING) {
+            int shift = 0, t = to.index();
+            Piece victim = get(to).opponent();
+            for (int d = 0; d < 4; d += 1) {
+                int cap = NEIGHBORS[t][d], far = CAPTURE_PARTNERS[t][d];
+                if (far >= 0 && _board[cap].side() == victim) {
+                    int captured = capture(cap, far);
+                    undoInfo |= captured << shift;
+                    shift += captured == 0 ? 0 : CAPTURE_BITS;
+                }
+            }
+            if (kingPosition() == null) {
+                _winner = BLACK;
+            }
         }
+        _undoLog[_moveCount] = undoInfo;
+        _moveLog[_moveCount] = move;
         _turn = turn().opponent();
+        flipTurnKeys();
         _moveCount += 1;
 
     }
@@ -320,90 +642,305 @@ class Board {
         makeMove(move.from(), move.to());
     }
 
-    /** Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     *  SQ0 and the necessary conditions are satisfied. */
-    private void capture(Square sq0, Square sq2) {
-        Square cap = sq0.between(sq2);
-        Piece ca = get(cap);
-        if (ca.equals(KING)) {
-            if (isThrown(cap)) {
-                Square up = sq(cap.col(), cap.row() + 1);
-                Square right = sq(cap.col() + 1, cap.row());
-                Square down = sq(cap.col(), cap.row() - 1);
-                Square left = sq(cap.col() - 1, cap.row());
-                if (isHostile(up, cap) && isHostile(right, cap)
-                        && isHostile(down, cap) && isHostile(left, cap)) {
-                    put(EMPTY, cap);
-                    _winner = BLACK;
+    /** Capture the piece on the square indexed CAP, which belongs to the
+     *  opponent of the piece that has just moved next to it, if the
+     *  square indexed FAR on its other side is hostile to it (or, for the
+     *  king where it must be surrounded (see SURROUND_KING), if all four
+     *  of its neighbors are).  Return 0 if nothing is captured, and
+     *  otherwise the record of the capture kept for undo: CAP plus 1,
+     *  plus KING_BIT if the king was captured. */
+    private int capture(int cap, int far) {
+        if (_board[cap] == KING) {
+            if (SURROUND_KING[cap]) {
+                for (int adj : NEIGHBORS[cap]) {
+                    if (adj < 0 || !hostile(adj, cap)) {
+                        return 0;
+                    }
                 }
-            } else {
-                if (isHostile(sq0, cap) && isHostile(sq2, cap)) {
-                    put(EMPTY, cap);
-                    _winner = BLACK;
+            } else if (!hostile(far, cap)) {
+                return 0;
+            }
+            put(EMPTY, sq(cap));
+            _winner = BLACK;
+            return cap + 1 + KING_BIT;
+        } else if (hostile(far, cap)) {
+            put(EMPTY, sq(cap));
+            return cap + 1;
+        }
+        return 0;
+    }
+
+
+    /** Return true iff the move encoded as MOVE (see Move.code) would
+     *  capture at least one piece.  This is a cheap test that follows the
+     *  pattern in capture without making the move, except that a white
+     *  piece next to an occupied throne is never considered capturable.
+     *  Assumes that MOVE is legal. */
+    boolean isCapture(int move) {
+        int from = Move.fromIndex(move), to = Move.toIndex(move);
+        if (!ARMED_KING && _board[from] == KING) {
+            return false;
+        }
+        Piece mover = _board[from].side();
+        for (int d = 0; d < 4; d += 1) {
+            int cap = NEIGHBORS[to][d], far = CAPTURE_PARTNERS[to][d];
+            if (far < 0 || _board[cap].side() != mover.opponent()) {
+                continue;
+            }
+            Piece beyond = far == from ? EMPTY : _board[far];
+            if (_board[cap] == KING && SURROUND_KING[cap]) {
+                if (kingSurroundedAfter(cap, from, to)) {
+                    return true;
+                }
+            } else if (far == THRONE_INDEX
+                       && THRONE_RULE != Variant.Throne.NEUTRAL) {
+                if (beyond == EMPTY || mover == WHITE) {
+                    return true;
                 }
+            } else if (CORNER_ESCAPE && CORNERS[far]) {
+                return true;
+            } else if ((ARMED_KING ? beyond.side() : beyond) == mover) {
+                return true;
             }
-        } else {
-            if (isHostile(sq0, cap) && isHostile(sq2, cap)) {
-                put(EMPTY, cap);
+        }
+        return false;
+    }
+
+    /** Return true iff the king on the square indexed KING, where it
+     *  must be surrounded to be captured, would have hostile squares on
+     *  all four sides after a black piece moves between the squares
+     *  indexed FROM and TO. */
+    private boolean kingSurroundedAfter(int king, int from, int to) {
+        for (int s : NEIGHBORS[king]) {
+            if (s < 0) {
+                return false;
+            }
+            Piece p = s == to ? BLACK : s == from ? EMPTY : _board[s];
+            if (p != BLACK && !(p == EMPTY && hostileWhenEmpty(s))) {
+                return false;
             }
         }
+        return true;
     }
 
+    /** Return true iff the square indexed S is hostile to every piece
+     *  when it is empty. */
+    private static boolean hostileWhenEmpty(int s) {
+        return s == THRONE_INDEX && THRONE_RULE != Variant.Throne.NEUTRAL
+            || CORNER_ESCAPE && CORNERS[s];
+    }
 
-    /** Undo one move.  Has no effect on the initial board. */
-    void undo() {
-        if (_moveCount > 0) {
-            undoPosition();
-            Move mv = _moverecord.peek();
-            put(get(mv.to()), mv.from());
-            put(EMPTY, mv.to());
-            _moverecord.pop();
+    /** Return true iff only the king may stop on the square indexed S:
+     *  the throne, or a corner under corner escape. */
+    static boolean isRestricted(int s) {
+        return s == THRONE_INDEX || CORNER_ESCAPE && CORNERS[s];
+    }
 
-            _moveCount -= 1;
-        }
+    /** Return true iff the king wins by reaching S. */
+    static boolean isEscape(Square s) {
+        return ESCAPES[s.index()];
     }
 
-    /** Remove record of current position in the set of positions encountered,
-     *  unless it is a repeated position or we are at the first move. */
-    private void undoPosition() {
-        if (_repeated || moveCount() == 0) {
-            return;
-        } else {
-            _record.pop();
-        }
+    /** Return true iff the king on S is captured only when hostile
+     *  squares surround it on all four sides, rather than between two
+     *  of them. */
+    static boolean mustSurroundKing(Square s) {
+        return SURROUND_KING[s.index()];
+    }
 
+    /** Give the move to the other side without moving a piece.  This
+     *  is not a legal move, and is not recorded in the move count or the
+     *  undo history; it is used by searches to judge how strong a
+     *  position is by letting the opponent move twice.  It must be
+     *  reversed by calling it again before any other change is made. */
+    void passTurn() {
+        assert _winner == null;
+        _turn = _turn.opponent();
+        flipTurnKeys();
+    }
+
+    /** Undo one move, restoring any pieces it captured and the win
+     *  status before it.  Has no effect on the initial board. */
+    void undo() {
+        if (_moveCount > 0) {
+            _moveCount -= 1;
+            int undoInfo = _undoLog[_moveCount];
+            int move = _moveLog[_moveCount];
+            Square from = sq(Move.fromIndex(move)),
+                to = sq(Move.toIndex(move));
+            Piece mover = get(to);
+            put(mover, from);
+            put(EMPTY, to);
+            for (int k = 0; k < MAX_CAPTURES; k += 1) {
+                int c = (undoInfo >>> (k * CAPTURE_BITS)) & CAPTURE_MASK;
+                if (c == 0) {
+                    break;
+                }
+                put((c & KING_BIT) != 0 ? KING : mover.opponent(),
+                    sq((c & ~KING_BIT) - 1));
+            }
+            _winner = PIECES[(undoInfo >>> WINNER_SHIFT) & WINNER_MASK];
+            if (_winner == EMPTY) {
+                _winner = null;
+            }
+            _repeated = (undoInfo & REPEATED_BIT) != 0;
+            _turn = turn().opponent();
+            flipTurnKeys();
+        }
     }
 
     /** Clear the undo stack and board-position counts. Does not modify the
      *  current position or win status. */
     void clearUndo() {
-        _moverecord.clear();
-        _record.clear();
         _moveCount = 0;
-
     }
 
     /** Return a new mutable list of all legal moves on the current board for
      *  SIDE (ignoring whose turn it is at the moment). */
     List<Move> legalMoves(Piece side) {
-        List<Move> list = new ArrayList<Move>();
-        HashSet<Square> ss = pieceLocations(side);
-        for (Square s: ss) {
-            for (int i = 0; i < 4; i++) {
-                SqList a = ROOK_SQUARES[s.index()][i];
-                for (Square sq: a) {
-                    if (isLegal1(s, sq)) {
-                        list.add(mv(s, sq));
+        int[] moves = new int[MAX_MOVES];
+        int n = legalMoves(side, moves, 0);
+        List<Move> list = new ArrayList<Move>(n);
+        for (int k = 0; k < n; k += 1) {
+            list.add(mv(moves[k]));
+        }
+        return list;
+    }
+
+    /** Store all legal moves on the current board for SIDE (ignoring
+     *  whose turn it is at the moment) in MOVES[START], MOVES[START + 1],
+     *  ..., encoded as by Move.code, and return the number of moves
+     *  stored.  MOVES must have room for MAX_MOVES moves after START. */
+    int legalMoves(Piece side, int[] moves, int start) {
+        return generateMoves(side, moves, start, MAX_MOVES);
+    }
+
+    /** Return the number of legal moves for SIDE on the current board. */
+    int countMoves(Piece side) {
+        return generateMoves(side, null, 0, MAX_MOVES);
+    }
+
+    /** Return true iff SIDE has a legal move.  This stops at the first
+     *  move found, which is usually among the first pieces examined. */
+    boolean hasMove(Piece side) {
+        return generateMoves(side, null, 0, 1) > 0;
+    }
+
+    /** Put the legal moves for SIDE that capture at least one piece (see
+     *  isCapture) into MOVES, starting at index START, and return their
+     *  number.  Only the empty squares next to an opposing piece are
+     *  considered as destinations, so this is much cheaper than
+     *  filtering all legal moves. */
+    int captureMoves(Piece side, int[] moves, int start) {
+        assert side != EMPTY;
+        if (moveCount() > _moveLimit) {
+            return 0;
+        }
+        Piece victim = side.opponent();
+        int n = 0;
+        for (int to = 0; to < NUM_SQUARES; to += 1) {
+            if (_board[to] != EMPTY || !nextTo(to, victim)) {
+                continue;
+            }
+            for (int d = 0; d < 4; d += 1) {
+                SqList ray = ROOK_SQUARES[to][d];
+                for (int k = 0; k < ray.size(); k += 1) {
+                    int from = ray.get(k).index();
+                    Piece p = _board[from];
+                    if (p == EMPTY) {
+                        continue;
+                    }
+                    if (p.side() == side
+                        && (p == KING || !isRestricted(to))) {
+                        int move = Move.code(sq(from), sq(to));
+                        if (isCapture(move)) {
+                            moves[start + n] = move;
+                            n += 1;
+                        }
                     }
+                    break;
                 }
             }
         }
-        return list;
+        return n;
     }
 
-    /** Return true iff SIDE has a legal move. */
-    boolean hasMove(Piece side) {
-        return !legalMoves(side).isEmpty();
+    /** Return true iff a piece on side SIDE is next to the square indexed
+     *  SQ. */
+    private boolean nextTo(int sq, Piece side) {
+        for (int adj : NEIGHBORS[sq]) {
+            if (adj >= 0 && _board[adj].side() == side) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of sequences of DEPTH legal moves starting from
+     *  the current position, where no sequence continues past a position
+     *  in which the game is over.  Leaves the position unchanged. */
+    long perft(int depth) {
+        return perft(depth, new int[depth + 1][MAX_MOVES]);
+    }
+
+    /** Return perft(DEPTH), using MOVES[d] to hold the moves at d plies
+     *  from the leaves. */
+    private long perft(int depth, int[][] moves) {
+        if (depth == 0) {
+            return 1;
+        } else if (winner() != null) {
+            return 0;
+        }
+        int n = legalMoves(turn(), moves[depth], 0);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int k = 0; k < n; k += 1) {
+            makeMove(moves[depth][k]);
+            total += perft(depth - 1, moves);
+            undo();
+        }
+        return total;
+    }
+
+    /** Walk each rook ray from each piece of SIDE up to the first
+     *  occupied square, storing the encoded moves found in MOVES[START],
+     *  ... if MOVES is non-null, until LIMIT moves have been found.
+     *  Return the number of moves found. */
+    private int generateMoves(Piece side, int[] moves, int start,
+                              int limit) {
+        assert side != EMPTY;
+        if (moveCount() > _moveLimit) {
+            return 0;
+        }
+        int n = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Square from = sq(i);
+            Piece p = _board[i];
+            if (p.side() != side) {
+                continue;
+            }
+            for (int d = 0; d < 4; d += 1) {
+                SqList ray = ROOK_SQUARES[i][d];
+                for (int k = 0; k < ray.size(); k += 1) {
+                    Square to = ray.get(k);
+                    if (get(to) != EMPTY) {
+                        break;
+                    }
+                    if (p == KING || !isRestricted(to.index())) {
+                        if (moves != null) {
+                            moves[start + n] = Move.code(from, to);
+                        }
+                        n += 1;
+                        if (n == limit) {
+                            return n;
+                        }
+                    }
+                }
+            }
+        }
+        return n;
     }
 
     @Override
@@ -429,7 +966,7 @@ class Board {
         }
         if (coordinates) {
             out.format("  ");
-            for (char c = 'a'; c <= 'i'; c += 1) {
+            for (char c = 'a'; c < 'a' + SIZE; c += 1) {
                 out.format(" %c", c);
             }
             out.format("%n");
@@ -437,24 +974,6 @@ class Board {
         return out.toString();
     }
 
-    /** Return the locations of all pieces on SIDE. */
-    private HashSet<Square> pieceLocations(Piece side) {
-        assert side != EMPTY;
-        HashSet<Square> locations = new HashSet<Square>();
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                if (_board.get(sq(i, j)).equals(side)) {
-                    locations.add(sq(i, j));
-                }
-                if (side.equals(WHITE) && _board.get(sq(i, j)).equals(KING)) {
-                    locations.add(sq(i, j));
-                }
-            }
-        }
-
-        return locations;
-    }
-
     /** Return the contents of _board in the order of SQUARE_LIST as a sequence
      *  of characters: the toString values of the current turn and Pieces. */
     String encodedBoard() {
@@ -466,8 +985,89 @@ class Board {
         return new String(result);
     }
 
+    /** Return a hash of the current position (pieces and side to move).
+     *  Equal positions have equal keys, and distinct positions almost
+     *  always have distinct keys. */
+    long positionKey() {
+        return _keys[0];
+    }
+
+    /** Return the position key (see positionKey) of the position to which
+     *  symmetry T (see Square.SYMMETRY) carries this one. */
+    long symmetricKey(int t) {
+        return _keys[t];
+    }
+
+    /** Return a symmetry (see Square.SYMMETRY) that carries this position
+     *  to its canonical form: the one of its symmetric images with the
+     *  smallest key.  Symmetric positions have the same canonical form
+     *  and thus the same canonical key, symmetricKey(canonicalSymmetry()),
+     *  so that results for one may be used for all, after carrying moves
+     *  over with Move.symmetric. */
+    int canonicalSymmetry() {
+        int best = 0;
+        for (int t = 1; t < SYMMETRIES; t += 1) {
+            if (_keys[t] < _keys[best]) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /** Return the canonical key of this position (see
+     *  canonicalSymmetry). */
+    long canonicalKey() {
+        return _keys[canonicalSymmetry()];
+    }
+
+    /** Record a change in the side to move in my keys. */
+    private void flipTurnKeys() {
+        for (int t = 0; t < SYMMETRIES; t += 1) {
+            _keys[t] ^= BLACK_TO_MOVE;
+        }
+    }
+
+    /** Set me to the position ENCODED, which is in the format returned by
+     *  encodedBoard, with no move limit and nothing to undo. */
+    void setPosition(String encoded) {
+        if (encoded.length() != NUM_SQUARES + 1) {
+            throw error("bad encoded board: %s", encoded);
+        }
+        init();
+        for (Square sq : SQUARE_LIST) {
+            Piece p = Piece.fromSymbol(encoded.charAt(sq.index() + 1));
+            if (p == null) {
+                throw error("bad encoded board: %s", encoded);
+            }
+            put(p, sq);
+        }
+        Piece turn = Piece.fromSymbol(encoded.charAt(0));
+        if (turn != WHITE && turn != BLACK) {
+            throw error("bad encoded board: %s", encoded);
+        }
+        setTurn(turn);
+    }
+
+    /** Make TURN the side to move in the current position, which must
+     *  have no moves to undo, and set winner() from the king's position
+     *  alone.  With put, this sets up a position much more cheaply than
+     *  setPosition, for programs that visit many positions. */
+    void setTurn(Piece turn) {
+        assert _moveCount == 0 && (turn == WHITE || turn == BLACK);
+        if (turn != _turn) {
+            _turn = turn;
+            flipTurnKeys();
+        }
+        _repeated = false;
+        _winner = _king == null ? BLACK : isEscape(_king) ? WHITE : null;
+    }
+
     /** Piece whose turn it is (WHITE or BLACK). */
     private Piece _turn;
+    /** _keys[t] is the Zobrist hash of the position to which symmetry t
+     *  carries the current one (see symmetricKey), so that _keys[0] is
+     *  positionKey(). */
+    private long[] _keys;
     /** Cached value of winner on this board, or null if it has not been
      *  computed. */
     private Piece _winner;
@@ -475,14 +1075,27 @@ class Board {
     private int _moveCount;
     /** True when current board is a repeated position (ending the game). */
     private boolean _repeated;
-    /** the board that represents pieces on squares.*/
-    private HashMap<Square, Piece> _board;
+    /** the board that represents pieces on squares, by square index.*/
+    private Piece[] _board;
+    /** _pieceCounts[p] is the number of squares holding the Piece with
+     *  ordinal p. */
+    private int[] _pieceCounts;
+    /** Location of the king, or null if it has been captured. */
+    private Square _king;
+    /** Number of black pieces adjacent to _king. */
+    private int _kingAttackers;
+    /** Number of black pieces in the cordon of _king (see kingCordon). */
+    private int _kingCordon;
+    /** Bitboard of occupied squares: the square with index i is occupied
+     *  iff bit i % 64 of _occupied[i / 64] is set. */
+    private long[] _occupied;
     /** the movelimits of my current board.**/
     private int _moveLimit;
-    /** a stack of record that records each board.*/
-    private Stack<String> _record;
-    /** a stack of moves.*/
-    private Stack<Move> _moverecord;
+    /** _undoLog[k] records what undo needs to reverse move #k (see
+     *  CAPTURE_BITS), and _moveLog[k] is that move (see Move.code). */
+    private int[] _undoLog, _moveLog;
+    /** _keyLog[k] is the key recorded by checkRepeated during move #k. */
+    private long[] _keyLog;
 
 
 
@@ -493,42 +1106,44 @@ class Board {
      * @param other a square other than me.
      * @param me my square.*/
     public boolean isHostile(Square other, Square me) {
-        if (other.equals(THRONE)) {
-            if (get(other).equals(EMPTY)) {
-                return true;
-            } else if (get(me).equals(WHITE)) {
-                Square dia1 = me.diag1(other);
-                Square dia2 = me.diag2(other);
-                if (get(dia1).equals(get(dia2)) && get(dia1).equals(BLACK)) {
-                    if (get(dia1.diag1(other)).equals(BLACK)
-                            || get(dia1.diag2(other)).equals(BLACK)) {
-                        return true;
-                    }
-                }
-            } else if (get(me).equals(BLACK)) {
+        return hostile(other.index(), me.index());
+    }
+
+    /** Return true iff the square indexed OTHER is hostile to the piece
+     *  on the square indexed ME: it holds an opposing piece (only an
+     *  attacker or defender, unless the king is armed), or it is a corner
+     *  under corner escape, or it is the throne and, unless the throne is
+     *  NEUTRAL, is empty or ME holds a black piece, or, under the TABLUT
+     *  throne rule, it is the occupied throne and ME holds a white piece
+     *  whose other throne neighbors are all black. */
+    private boolean hostile(int other, int me) {
+        Piece victim = _board[me], p = _board[other];
+        if (other == THRONE_INDEX && THRONE_RULE != Variant.Throne.NEUTRAL) {
+            if (p == EMPTY || victim == BLACK) {
                 return true;
+            } else if (victim != WHITE
+                       || THRONE_RULE != Variant.Throne.TABLUT) {
+                return false;
             }
-        } else if (get(other).equals(BLACK)) {
-            if (get(me).equals(WHITE) || get(me).equals(KING)) {
-                return true;
+            for (int partner : THRONE_PARTNERS[me]) {
+                if (_board[partner] != BLACK) {
+                    return false;
+                }
             }
-        } else if (get(other).equals(WHITE) && get(me).equals(BLACK)) {
             return true;
-        } else if (get(other).equals(KING) && get(me).equals(BLACK)) {
+        } else if (CORNER_ESCAPE && CORNERS[other]) {
             return true;
+        } else if (victim == BLACK) {
+            return (ARMED_KING ? p.side() : p) == WHITE;
+        } else {
+            return victim.side() == WHITE && p == BLACK;
         }
-        return false;
-
     }
     /** check if the square is on thrown.
      * @param  s1 a square.
      * @return return true if i am on the throne positions.*/
     public boolean isThrown(Square s1) {
-        return s1.equals(THRONE)
-                || s1.equals(NTHRONE)
-                || s1.equals(ETHRONE)
-                || s1.equals(WTHRONE)
-                || s1.equals(STHRONE);
+        return THRONE_AREA[s1.index()];
 
     }
 
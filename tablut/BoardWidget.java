@@ -7,17 +7,32 @@ import java.util.concurrent.ArrayBlockingQueue;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 
 
+import static tablut.Piece.*;
 import static tablut.Square.sq;
-
-
-/** A widget that displays a Tablut game.
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Square.SQUARE_LIST;
+
+
+/** A widget that displays a Tablut game.  The widget never looks at a
+ *  live Board: update publishes an immutable Snapshot of it through a
+ *  volatile field and returns at once, so that neither the controller
+ *  nor a searching AI ever waits for painting, and painting never waits
+ *  for them.  Painting (on the Swing event thread) brings a back buffer
+ *  up to date with the latest snapshot by redrawing only the squares
+ *  whose contents differ from those last drawn, copying each from a
+ *  cached image of the empty board, and then copies the back buffer to
+ *  the screen.
  *  @author Mingyan Zou
  */
 class BoardWidget extends Pad {
 
+
     /* Parameters controlling sizes, speeds, colors, and fonts. */
 
     /** Squares on each side of the board. */
@@ -43,6 +58,9 @@ class BoardWidget extends Pad {
         SQUARE_SIDE = 30,
         BOARD_SIDE = SQUARE_SIDE * SIZE + 2 * OFFSET + MARGIN;
 
+    /** Gap between a piece and the sides of its square (in pixels). */
+    static final int PIECE_GAP = 3;
+
     /** The font in which to render the "K" in the king. */
     static final Font KING_FONT = new Font("Serif", Font.BOLD, 18);
     /** The font for labeling rows and columns. */
@@ -62,13 +80,46 @@ class BoardWidget extends Pad {
         _acceptingMoves = false;
     }
 
-    /** Draw the bare board G.  */
+    /** The contents of the squares of a board at some moment.  Snapshots
+     *  are never changed once made, and so may be handed between threads
+     *  freely. */
+    static final class Snapshot {
+
+        /** A snapshot of BOARD. */
+        Snapshot(Board board) {
+            for (Square s : SQUARE_LIST) {
+                _pieces[s.index()] = board.get(s);
+            }
+        }
+
+        /** A snapshot in which every square holds null, matching no
+         *  board. */
+        private Snapshot() {
+        }
+
+        /** Return the contents of the square indexed I. */
+        Piece get(int i) {
+            return _pieces[i];
+        }
+
+        /** Contents of the squares, by index. */
+        private final Piece[] _pieces = new Piece[NUM_SQUARES];
+    }
+
+    /** Draw the bare board G: squares, grid, and coordinates.  */
     private void drawGrid(Graphics2D g) {
         g.setColor(SQUARE_COLOR);
         g.fillRect(0, 0, BOARD_SIDE, BOARD_SIDE);
-        g.setColor(THRONE_COLOR);
-        g.fillRect(cx(Board.THRONE), cy(Board.THRONE),
-                   SQUARE_SIDE, SQUARE_SIDE);
+        for (Square s : SQUARE_LIST) {
+            if (Board.isRestricted(s.index())) {
+                g.setColor(THRONE_COLOR);
+                g.fillRect(cx(s), cy(s), SQUARE_SIDE, SQUARE_SIDE);
+            }
+        }
+        g.setColor(ADJACENT_THRONE_COLOR);
+        for (Square s : ADJACENT_THRONE) {
+            g.fillRect(cx(s), cy(s), SQUARE_SIDE, SQUARE_SIDE);
+        }
 
         g.setColor(GRID_LINE_COLOR);
         for (int k = 0; k <= SIZE; k += 1) {
@@ -76,18 +127,88 @@ class BoardWidget extends Pad {
             g.drawLine(cx(k), cy(-1), cx(k), cy(SIZE - 1));
         }
 
-
+        g.setFont(ROW_COL_FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        for (int k = 0; k < SIZE; k += 1) {
+            String col = String.valueOf((char) ('a' + k)),
+                row = String.valueOf(k + 1);
+            g.drawString(col, cx(k) + (SQUARE_SIDE
+                                       - metrics.stringWidth(col)) / 2,
+                         cy(-1) + MARGIN - OFFSET);
+            g.drawString(row, (MARGIN - metrics.stringWidth(row)) / 2,
+                         cy(k) + (SQUARE_SIDE + metrics.getAscent()) / 2);
+        }
     }
 
     @Override
-    public synchronized void paintComponent(Graphics2D g) {
-        drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+    public void paintComponent(Graphics2D g) {
+        Snapshot snapshot = _snapshot;
+        if (_buffer == null) {
+            _background = image();
+            Graphics2D bare = _background.createGraphics();
+            drawGrid(bare);
+            bare.dispose();
+            _buffer = image();
+            Graphics2D copy = _buffer.createGraphics();
+            copy.drawImage(_background, 0, 0, null);
+            copy.dispose();
+            _drawn = new Snapshot();
+        }
+        if (!_incremental) {
+            _drawn = new Snapshot();
+        }
+        Graphics2D bg = null;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            Piece p = snapshot.get(i);
+            if (p != _drawn.get(i)) {
+                if (bg == null) {
+                    bg = _buffer.createGraphics();
+                    bg.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                        RenderingHints.VALUE_ANTIALIAS_ON);
+                }
+                drawSquare(bg, sq(i), p);
+                _squaresDrawn += 1;
+            }
+        }
+        if (bg != null) {
+            bg.dispose();
+        }
+        _drawn = snapshot;
+        g.drawImage(_buffer, 0, 0, null);
     }
 
-    /** Draw the contents of S on G. */
-    private void drawPiece(Graphics2D g, Square s) {
+    /** Return a new image the size of the board. */
+    private static BufferedImage image() {
+        return new BufferedImage(BOARD_SIDE, BOARD_SIDE,
+                                 BufferedImage.TYPE_INT_RGB);
+    }
 
+    /** Draw square S holding P on G, which draws on the back buffer. */
+    private void drawSquare(Graphics2D g, Square s, Piece p) {
+        int x = cx(s), y = cy(s);
+        g.drawImage(_background, x, y, x + SQUARE_SIDE + 1,
+                    y + SQUARE_SIDE + 1, x, y, x + SQUARE_SIDE + 1,
+                    y + SQUARE_SIDE + 1, null);
+        drawPiece(g, s, p);
+    }
+
+    /** Draw P, if it is not EMPTY, on square S of G. */
+    private void drawPiece(Graphics2D g, Square s, Piece p) {
+        if (p == EMPTY) {
+            return;
+        }
+        int x = cx(s) + PIECE_GAP, y = cy(s) + PIECE_GAP,
+            side = SQUARE_SIDE - 2 * PIECE_GAP;
+        g.setColor(p == BLACK ? BLACK_COLOR : WHITE_COLOR);
+        g.fillOval(x, y, side, side);
+        g.setColor(GRID_LINE_COLOR);
+        g.drawOval(x, y, side, side);
+        if (p == KING) {
+            g.setFont(KING_FONT);
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString("K", x + (side - metrics.stringWidth("K")) / 2,
+                         y + (side + metrics.getAscent()) / 2 - 2);
+        }
     }
 
     /** Handle a click on S. */
@@ -96,7 +217,7 @@ class BoardWidget extends Pad {
     }
 
     /** Handle mouse click event E. */
-    private synchronized void mouseClicked(String unused, MouseEvent e) {
+    private void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = (xpos - OFFSET - MARGIN) / SQUARE_SIDE,
             y = (OFFSET - ypos) / SQUARE_SIDE + SIZE - 1;
@@ -106,9 +227,11 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Revise the displayed board according to BOARD. */
-    synchronized void update(Board board) {
-        _board.copy(board);
+    /** Revise the displayed board according to BOARD.  This takes a
+     *  snapshot of BOARD and returns without waiting for it to be
+     *  painted, so BOARD may change as soon as this returns. */
+    void update(Board board) {
+        _snapshot = new Snapshot(board);
         repaint();
     }
 
@@ -120,6 +243,18 @@ class BoardWidget extends Pad {
         repaint();
     }
 
+    /** Redraw only the squares that have changed when painting iff ON
+     *  (as by default), and otherwise redraw all of them.  For
+     *  measuring the cost of painting. */
+    void setIncremental(boolean on) {
+        _incremental = on;
+    }
+
+    /** Return the number of squares drawn into the back buffer so far. */
+    long squaresDrawn() {
+        return _squaresDrawn;
+    }
+
     /** Return x-pixel coordinate of the left corners of column X
      *  relative to the upper-left corner of the board. */
     private int cx(int x) {
@@ -146,10 +281,24 @@ class BoardWidget extends Pad {
 
     /** Queue on which to post move commands (from mouse clicks). */
     private ArrayBlockingQueue<String> _commands;
-    /** Board being displayed. */
-    private final Board _board = new Board();
+    /** The latest board to be displayed, as published by update. */
+    private volatile Snapshot _snapshot = new Snapshot(new Board());
+
+    /* The remaining fields are used only while painting, on the Swing
+     * event thread. */
+
+    /** The bare board (see drawGrid), or null until first painted. */
+    private BufferedImage _background;
+    /** The board as last drawn, or null until first painted. */
+    private BufferedImage _buffer;
+    /** The snapshot drawn in _buffer. */
+    private Snapshot _drawn;
+    /** True iff painting redraws only changed squares. */
+    private volatile boolean _incremental = true;
+    /** Number of squares drawn into _buffer. */
+    private long _squaresDrawn;
 
     /** True iff accepting moves from user. */
-    private boolean _acceptingMoves;
+    private volatile boolean _acceptingMoves;
 
 }
@@ -1,10 +1,11 @@
 package tablut;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.util.function.Consumer;
 
 import static tablut.Utils.*;
@@ -23,7 +24,9 @@ final class Controller {
      *  to report moves, wins, and errors to user. If LOGFILE is
      *  non-null, copies all commands to it. If STRICT, exits the
      *  program with non-zero code on receiving an erroneous move from a
-     *  player. */
+     *  player.  The engines "ai" (AUTOPLAYERTEMPLATE) and "mcts" (an
+     *  MCTSPlayer, created when first named unless set by setEngine) may
+     *  be named in "auto" commands (see setEngine). */
     Controller(View view, PrintStream logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
@@ -36,6 +39,7 @@ final class Controller {
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
         _white = _autoPlayerTemplate.create(WHITE, this);
         _black = _manualPlayerTemplate.create(BLACK, this);
+        _engines.put("ai", autoPlayerTemplate);
         _reporter = reporter;
         _strict = strict;
     }
@@ -69,9 +73,19 @@ final class Controller {
                 }
             }
         }
+        closePlayers();
+        archiveGame();
         if (_logFile != null) {
             _logFile.close();
         }
+        if (_archive != null) {
+            try {
+                _archive.close();
+            } catch (IOException excp) {
+                reportError("Could not write game archive: %s",
+                            excp.getMessage());
+            }
+        }
     }
 
     /** Return the current board.  The value returned should not be
@@ -93,6 +107,14 @@ final class Controller {
      *  Initially, the PRNG is randomly seeded. */
     void setSeed(long seed) {
         _randGen.setSeed(seed);
+        _seed = seed;
+    }
+
+    /** Add each game played to ARCHIVE (if not null) when it is won,
+     *  abandoned by "new", or ended by the end of play, which also
+     *  closes ARCHIVE. */
+    void setArchive(GameArchive.Writer archive) {
+        _archive = archive;
     }
 
     /** Return the next line of input, or null if there is no more. First
@@ -110,6 +132,12 @@ final class Controller {
         }
     }
 
+    /** Return the winner of the current game, or null if it is not
+     *  over. */
+    Piece winner() {
+        return _winner;
+    }
+
     /** Return true iff white is a manual player. */
     boolean manualWhite() {
         return _white.isManual();
@@ -144,79 +172,195 @@ final class Controller {
         }
     }
 
-    /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
-     *  <processor> is a functional object whose .accept method takes a
-     *  successfully matched Matcher and performs some operation. */
+    /** Make WHITE and BLACK, which must have been created for me, the
+     *  players of the two sides, closing the players they replace. */
+    void setPlayers(Player white, Player black) {
+        _white.close();
+        _black.close();
+        _white = white;
+        _black = black;
+    }
+
+    /** Close all my players.  Called when they are no longer needed. */
+    void closePlayers() {
+        _nonPlayer.close();
+        _white.close();
+        _black.close();
+    }
+
+    /** Make TEMPLATE the exemplar for the automated players created by
+     *  the command "auto <color> NAME". */
+    void setEngine(String name, Player template) {
+        _engines.put(name, template);
+    }
+
+    /** Kinds of argument taken by Commands: none, a decimal number, a
+     *  color (white or black), a square designation (see Square.SQ), or a
+     *  color optionally followed by whitespace and a word. */
+    private static final int
+        NO_ARG = 0,
+        NUMBER_ARG = 1,
+        COLOR_ARG = 2,
+        SQUARE_ARG = 3,
+        COLOR_WORD_ARG = 4;
+
+    /** A Command is a triple (<name>, <argument kind>, <processor>), where
+     *  <name> is the first word of instances of a particular command,
+     *  <argument kind> says what must follow it, and <processor> is a
+     *  functional object whose .accept method takes the argument (null if
+     *  there is none) and performs some operation. */
     private static class Command {
-        /** A new Command that matches PATN (a regular expression) and uses
-         *  PROCESSOR to process commands that match the pattern. */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
+        /** A new Command named NAME, taking an argument of kind ARGKIND and
+         *  using PROCESSOR to process its instances. */
+        Command(String name, int argKind, Consumer<String> processor) {
+            _name = name;
+            _argKind = argKind;
             _processor = processor;
         }
 
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
+        /** Return true iff ARG (null if none) is an acceptable argument
+         *  for me. */
+        boolean accepts(String arg) {
+            switch (_argKind) {
+            case NO_ARG:
+                return arg == null;
+            case NUMBER_ARG:
+                if (arg == null) {
+                    return false;
+                }
+                for (int i = 0; i < arg.length(); i += 1) {
+                    if (arg.charAt(i) < '0' || arg.charAt(i) > '9') {
+                        return false;
+                    }
+                }
+                return true;
+            case COLOR_ARG:
+                return "white".equals(arg) || "black".equals(arg);
+            case COLOR_WORD_ARG:
+                if (arg == null) {
+                    return false;
+                }
+                int end = wordEnd(arg, 0), start;
+                for (start = end; start < arg.length()
+                         && isSpace(arg.charAt(start)); start += 1) {
+                    /* Find the start of the word. */
+                }
+                String color = arg.substring(0, end);
+                return ("white".equals(color) || "black".equals(color))
+                    && wordEnd(arg, start) == arg.length();
+            case SQUARE_ARG:
+                return arg != null
+                    && Square.parse(arg, 0, arg.length()) != null;
+            default:
+                assert false;
+                return false;
+            }
+        }
+
+        /** My name. */
+        protected final String _name;
+        /** The kind of argument I take. */
+        protected final int _argKind;
         /** The function object that implements my command. */
-        protected final Consumer<Matcher> _processor;
+        protected final Consumer<String> _processor;
     }
 
     /** A list of Commands describing the valid textual commands to the
-     *  Tablut program and the methods to process them. */
+     *  Tablut program (other than moves) and the methods to process
+     *  them. */
     private Command[] _commands = {
-        new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
-        new Command("seed\\s+(\\d+)$", this::doSeed),
-        new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
-        new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
+        new Command("quit", NO_ARG, this::doQuit),
+        new Command("new", NO_ARG, this::doNew),
+        new Command("seed", NUMBER_ARG, this::doSeed),
+        new Command("dump", NO_ARG, this::doDump),
+        new Command("undo", NO_ARG, this::doUndo),
+        new Command("manual", COLOR_ARG, this::doManual),
+        new Command("auto", COLOR_WORD_ARG, this::doAuto),
+        new Command("limit", NUMBER_ARG, this::doLimit),
+        new Command("perft", NUMBER_ARG, this::doPerft),
+        new Command("stats", NO_ARG, this::doStats),
+        new Command("toggle", SQUARE_ARG, this::doToggle)
     };
 
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
-
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
-    private void executeCommand(String cmnd) {
+     *  so, raising an IllegalArgumentException otherwise.  Used by play, and
+     *  by Tournament to drive games without reading input.  Anything from
+     *  "#" on is a comment, and case is ignored.  Otherwise, CMND is a
+     *  move (see Move.MOVE_PATTERN) or the name of a command, followed, if
+     *  the command takes an argument, by whitespace and the argument, as
+     *  for the regular expression NAME\s+ARG. */
+    void executeCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
             _logFile.flush();
         }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+        int comment = cmnd.indexOf('#');
+        if (comment >= 0) {
+            cmnd = cmnd.substring(0, comment);
+        }
+        cmnd = cmnd.trim().toLowerCase();
 
         if (cmnd.isEmpty()) {
             return;
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
+        if (Move.isGrammaticalMove(cmnd)) {
+            doMove(cmnd);
+            return;
+        }
+        int n = cmnd.length(), end, start;
+        for (end = 0; end < n && !isSpace(cmnd.charAt(end)); end += 1) {
+            /* Find the end of the command name. */
+        }
+        for (start = end; start < n && isSpace(cmnd.charAt(start));
+             start += 1) {
+            /* Find the start of the argument. */
+        }
+        String arg = start < n ? cmnd.substring(start) : null;
+        for (Command command : _commands) {
+            if (end == command._name.length()
+                && cmnd.startsWith(command._name) && command.accepts(arg)) {
+                command._processor.accept(arg);
                 return;
             }
         }
         throw error("Bad command: %s", cmnd);
     }
 
+    /** Return the index of the first whitespace character in STR at or
+     *  after START, or its length if there is none. */
+    private static int wordEnd(String str, int start) {
+        int end;
+        for (end = start; end < str.length() && !isSpace(str.charAt(end));
+             end += 1) {
+            /* Find the end of the word. */
+        }
+        return end;
+    }
+
+    /** Return true iff C is whitespace, as for \s in a regular
+     *  expression. */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+            || c == '\f' || c == '\r';
+    }
+
     /** Command "new". */
-    private void doNew(Matcher unused) {
+    private void doNew(String unused) {
+        archiveGame();
         _board.init();
         _winner = null;
     }
 
-    /** Command "manual <color>", where <color> is COLOR.group(1). */
-    private void doManual(Matcher color) {
-        switch (color.group(1)) {
+    /** Command "manual <color>", where <color> is COLOR. */
+    private void doManual(String color) {
+        switch (color) {
         case "black":
+            _black.close();
             _black = _manualPlayerTemplate.create(BLACK, this);
             break;
         case "white":
+            _white.close();
             _white = _manualPlayerTemplate.create(WHITE, this);
             break;
         default:
@@ -225,14 +369,27 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
-    private void doAuto(Matcher color) {
-        switch (color.group(1)) {
+    /** Command "auto <color> [<engine>]", where ARG is <color>, or
+     *  <color>, whitespace, and <engine>, which names the engine (see
+     *  setEngine) whose template creates the player.  Without <engine>,
+     *  the automated-player template is used. */
+    private void doAuto(String arg) {
+        int end = wordEnd(arg, 0);
+        String color = arg.substring(0, end),
+            engine = arg.substring(end).trim();
+        Player template = engine.isEmpty() ? _autoPlayerTemplate
+            : engine(engine);
+        if (template == null) {
+            throw error("Unknown engine: %s", engine);
+        }
+        switch (color) {
         case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+            _black.close();
+            _black = template.create(BLACK, this);
             break;
         case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+            _white.close();
+            _white = template.create(WHITE, this);
             break;
         default:
             assert false;
@@ -240,11 +397,21 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "toggle". The first group of MAT is a square designation.
+    /** Return the template of the engine named NAME (see setEngine), or
+     *  null if there is none.  The default "mcts" engine, a one-thread
+     *  MCTSPlayer, is created the first time it is named. */
+    private Player engine(String name) {
+        if (name.equals("mcts") && !_engines.containsKey(name)) {
+            _engines.put(name, new MCTSPlayer(1));
+        }
+        return _engines.get(name);
+    }
+
+    /** Command "toggle <square>", where <square> is SQUARE.
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
+    private void doToggle(String square) {
+        Square sq = sq(square);
         Piece piece;
         switch (_board.get(sq)) {
         case EMPTY: piece = WHITE; break;
@@ -258,51 +425,106 @@ final class Controller {
     }
 
     /** Command "quit". */
-    private void doQuit(Matcher unused) {
+    private void doQuit(String unused) {
         _playing = false;
     }
 
-    /** Command "seed N" where N is the first group of MAT. */
-    private void doSeed(Matcher mat) {
+    /** Command "seed N". */
+    private void doSeed(String n) {
         try {
-            setSeed(Long.parseLong(mat.group(1)));
+            setSeed(Long.parseLong(n));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Command "limit N" where N is the first captured group of MAT. */
-    private void doLimit(Matcher mat) {
+    /** Command "limit N". */
+    private void doLimit(String n) {
         try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+            _board.setMoveLimit(Integer.parseInt(n));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Execute a move command matched in MAT. */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+    /** Command "perft N": count the move sequences of length N from the
+     *  current position (see Board.perft) and print the count and the
+     *  speed of counting. */
+    private void doPerft(String n) {
+        int depth;
+        try {
+            depth = Integer.parseInt(n);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        long start = System.nanoTime();
+        long count = new Board(_board).perft(depth);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        System.out.printf("perft %d: %d (%d ms, %d nodes/s)%n", depth, count,
+                          elapsed / 1000000, count * 1000000000L / elapsed);
+    }
+
+    /** Command "stats": print the statistics of the last search by each
+     *  automated player (see AI.lastStats). */
+    private void doStats(String unused) {
+        for (Player player : new Player[] { _white, _black }) {
+            if (player instanceof AI) {
+                SearchStats stats = ((AI) player).lastStats();
+                System.out.printf("%s: %s", player.myPiece().toName(),
+                                  stats == null ? String.format("no search%n")
+                                  : stats);
+            }
+        }
+    }
+
+    /** Execute the move command MOVE.  The game ends when the board has
+     *  a winner or when the side to move has no legal move, and so
+     *  loses. */
+    private void doMove(String move) {
+        Move mv = Move.mv(move);
+        if (mv == null) {
+            throw error("Bad move: %s", move);
+        }
+        _board.makeMove(mv);
+        _archived = false;
         if (_winner == null) {
             _winner = _board.winner();
+            if (_winner == null && !_board.hasMove(_board.turn())) {
+                _winner = _board.turn().opponent();
+            }
             if (_winner != null) {
+                archiveGame();
                 _view.update(this);
                 _reporter.reportNote("%s wins.", _winner.toName());
             }
         }
     }
 
+    /** Add the game on the board to my archive, if I have one and the
+     *  game has moves not yet added. */
+    private void archiveGame() {
+        if (_archive != null && !_archived && _board.moveCount() > 0) {
+            try {
+                _archive.add(_board, _seed, _winner);
+            } catch (IOException excp) {
+                reportError("Could not archive game: %s", excp.getMessage());
+            }
+            _archived = true;
+        }
+    }
+
     /** Dump the contents of the board on standard output. */
-    private void doDump(Matcher unused) {
+    private void doDump(String unused) {
         System.out.printf("===%n%s===%n", _board);
     }
 
     /** Undo back to before my last move, if there was one (otherwise does
      *  nothing). */
-    private void doUndo(Matcher unused) {
+    private void doUndo(String unused) {
         if (_board.moveCount() > 1) {
             _board.undo();
             _board.undo();
+            _archived = false;
             _winner = null;
             _view.update(this);
         }
@@ -326,6 +548,15 @@ final class Controller {
     /** Log file, or null if absent. */
     private PrintStream _logFile;
 
+    /** Archive of the games played, or null if absent. */
+    private GameArchive.Writer _archive;
+
+    /** True iff the game on the board is in _archive. */
+    private boolean _archived;
+
+    /** The seed last given to setSeed, or 0 if none. */
+    private long _seed;
+
     /** Input source. */
     private Scanner _input;
 
@@ -340,6 +571,10 @@ final class Controller {
     /** The current templates for manual and automated players. */
     private Player _autoPlayerTemplate, _manualPlayerTemplate;
 
+    /** Templates for automated players, by the names used in "auto"
+     *  commands. */
+    private final Map<String, Player> _engines = new HashMap<>();
+
     /** Reporter for messages and errors. */
     private Reporter _reporter;
 
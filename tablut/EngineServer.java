@@ -0,0 +1,200 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static tablut.Utils.error;
+
+/** A server that plays moves chosen by an AI for clients connected over
+ *  TCP on the loopback interface, such as RemotePlayers.  Each
+ *  connection has its own board and its own AI (and so its own
+ *  transposition table), and is served by its own thread, so that one
+ *  server can take part in many games at once.  Run with
+ *      java -cp .. tablut.EngineServer [PORT [THREADS]]
+ *  where THREADS is the number of search threads used for each move.
+ *  The protocol is line-based: the client sends one request per line and
+ *  the server answers each with one line.
+ *      VARIANT VERSION           handshake, which must come first,
+ *                                where VARIANT is the name of the
+ *                                Variant played; answered by the same
+ *                                line.
+ *      position BOARD MOVE...    set the position to BOARD (as given by
+ *                                Board.encodedBoard) followed by the
+ *                                moves MOVE...; answered by "ok".
+ *      go MS                     answered by "move MOVE NODES", where
+ *                                MOVE is the move chosen for the side to
+ *                                move after searching for about MS
+ *                                milliseconds, and NODES is the number
+ *                                of positions searched.
+ *      quit                      closes the connection.
+ *  A request that cannot be carried out is answered by "error MESSAGE".
+ *  @author Mingyan Zou
+ */
+class EngineServer implements Closeable {
+
+    /** Default port. */
+    static final int PORT = 6161;
+
+    /** Version of the protocol I speak. */
+    static final int PROTOCOL_VERSION = 1;
+
+    /** The handshake line, which names the variant played (see
+     *  Variant), so that engines playing different variants do not
+     *  accept each other's positions. */
+    static final String HELLO =
+        Variant.current().name() + " " + PROTOCOL_VERSION;
+
+    /** Maximum number of pending connections. */
+    private static final int BACKLOG = 64;
+
+    /** Serve moves on the port given by ARGS[0] (default PORT), searching
+     *  with ARGS[1] threads (default 1). */
+    public static void main(String... args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        try (EngineServer server = new EngineServer(port, new AI(threads))) {
+            System.err.printf("serving on port %d%n", server.port());
+            server.serve();
+        }
+    }
+
+    /** A server listening on the loopback interface at PORT (or on some
+     *  free port if PORT is 0), whose AIs are created from TEMPLATE. */
+    EngineServer(int port, AI template) throws IOException {
+        _socket = new ServerSocket(port, BACKLOG,
+                                   InetAddress.getLoopbackAddress());
+        _template = template;
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept connections and serve each on its own thread, until I am
+     *  closed. */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                Socket client;
+                try {
+                    client = _socket.accept();
+                } catch (SocketException excp) {
+                    if (_socket.isClosed()) {
+                        return;
+                    }
+                    throw excp;
+                }
+                _sessions.execute(() -> session(client));
+            }
+        } finally {
+            _sessions.shutdownNow();
+        }
+    }
+
+    /** Stop accepting connections.  Sessions in progress continue until
+     *  their clients quit. */
+    @Override
+    public void close() throws IOException {
+        _socket.close();
+    }
+
+    /** Answer the requests from CLIENT until it quits or disconnects. */
+    private void session(Socket client) {
+        try (Socket socket = client;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), UTF_8));
+             PrintWriter out = new PrintWriter(
+                 new OutputStreamWriter(socket.getOutputStream(), UTF_8),
+                 true)) {
+            socket.setTcpNoDelay(true);
+            String line = in.readLine();
+            if (line == null || !line.trim().equals(HELLO)) {
+                out.println("error expected \"" + HELLO + "\"");
+                return;
+            }
+            out.println(HELLO);
+            AI ai = (AI) _template.create(null, null);
+            Board board = new Board();
+            try {
+                while ((line = in.readLine()) != null) {
+                    String[] words = line.trim().split("\\s+");
+                    if (words[0].equals("quit")) {
+                        return;
+                    }
+                    out.println(respond(ai, board, words));
+                }
+            } finally {
+                ai.close();
+            }
+        } catch (IOException excp) {
+            /* The client has gone; there is no one to tell. */
+        }
+    }
+
+    /** Return the answer to the request WORDS (a request line split into
+     *  words), carrying it out on BOARD with AI. */
+    static String respond(AI ai, Board board, String[] words) {
+        try {
+            switch (words[0]) {
+            case "position":
+                setPosition(board, words);
+                return "ok";
+            case "go":
+                return go(ai, board, words);
+            default:
+                return "error unknown request: " + words[0];
+            }
+        } catch (IllegalArgumentException excp) {
+            return "error " + excp.getMessage();
+        }
+    }
+
+    /** Carry out the position request WORDS on BOARD. */
+    private static void setPosition(Board board, String[] words) {
+        if (words.length < 2) {
+            throw error("missing position");
+        }
+        board.setPosition(words[1]);
+        for (int i = 2; i < words.length; i += 1) {
+            Move mv = Move.mv(words[i]);
+            if (mv == null || board.winner() != null || !board.isLegal(mv)) {
+                throw error("illegal move: %s", words[i]);
+            }
+            board.makeMove(mv);
+        }
+    }
+
+    /** Return the answer to the go request WORDS, searching BOARD with
+     *  AI. */
+    private static String go(AI ai, Board board, String[] words) {
+        if (words.length != 2 || !words[1].matches("\\d{1,9}")) {
+            throw error("bad time limit");
+        }
+        if (board.winner() != null || !board.hasMove(board.turn())) {
+            throw error("no move");
+        }
+        long time = Long.parseLong(words[1]) * 1000000L;
+        Move mv = ai.findMove(board, Analyzer.TIMED_DEPTH, time);
+        return String.format("move %s %d", mv, ai.lastNodeCount());
+    }
+
+    /** The socket on which I accept connections. */
+    private final ServerSocket _socket;
+    /** Template for the AIs that choose moves. */
+    private final AI _template;
+    /** Threads serving connections. */
+    private final ExecutorService _sessions = Executors.newCachedThreadPool();
+
+}
@@ -0,0 +1,118 @@
+package tablut;
+
+import static tablut.Piece.*;
+import static tablut.Utils.error;
+
+/** A linear evaluation of positions, as used by the AI away from won and
+ *  lost positions: the sum of features of a position, each multiplied by
+ *  its weight.  Features are measured from white's side, so that a
+ *  positive weight favors white.  Each feature is maintained by the Board
+ *  as it changes or read from a table, so that an evaluation takes a
+ *  small, fixed time, which should stay within BUDGET_NANOS (see
+ *  SearchBench ops).  The DEFAULT weights were fitted to the results of
+ *  self-play games by Texel.
+ *  @author Mingyan Zou
+ */
+final class Evaluation {
+
+    /** Indices of the features: the number of white pieces other than the
+     *  king less the number of black pieces, the number of open routes
+     *  from the king to an escape square (see Board.kingEscapeRoutes),
+     *  the number of squares the king can move to, the distance from the
+     *  king to the nearest escape square (see Board.kingEscapeDistance),
+     *  the number of black pieces next to the king, and the number in its
+     *  cordon (see Board.kingCordon). */
+    static final int
+        MATERIAL = 0,
+        ESCAPE_ROUTES = 1,
+        KING_MOBILITY = 2,
+        ESCAPE_DISTANCE = 3,
+        KING_ATTACKERS = 4,
+        CORDON = 5;
+
+    /** The number of features. */
+    static final int FEATURES = 6;
+
+    /** Names of the features, by index, as used by toString. */
+    static final String[] NAMES = {
+        "material", "routes", "mobility", "distance", "attackers", "cordon"
+    };
+
+    /** The weight of MATERIAL, which sets the scale of scores.  Texel
+     *  leaves it unchanged, and the AI sizes its search windows by it. */
+    static final int PIECE_VALUE = 16;
+
+    /** The most time in nanoseconds that an evaluation should take. */
+    static final int BUDGET_NANOS = 100;
+
+    /** The weights used by default: those found by Texel from 1,200
+     *  self-play games at depth 4, starting from material 16, routes 8,
+     *  and mobility 1, over which they scored 61% in 300 games. */
+    static final Evaluation DEFAULT =
+        new Evaluation(PIECE_VALUE, 8, 3, 0, 0, -1);
+
+    /** An evaluation whose weights, in the order of the feature indices,
+     *  are WEIGHTS. */
+    Evaluation(int... weights) {
+        if (weights.length != FEATURES) {
+            throw error("need %d weights", FEATURES);
+        }
+        _weights = weights.clone();
+        _material = weights[MATERIAL];
+        _routes = weights[ESCAPE_ROUTES];
+        _mobility = weights[KING_MOBILITY];
+        _distance = weights[ESCAPE_DISTANCE];
+        _attackers = weights[KING_ATTACKERS];
+        _cordon = weights[CORDON];
+    }
+
+    /** Return the weight of feature F. */
+    int weight(int f) {
+        return _weights[f];
+    }
+
+    /** Return my weights, in the order of the feature indices. */
+    int[] weights() {
+        return _weights.clone();
+    }
+
+    /** Return the value of BOARD: positive if it favors white, negative
+     *  if it favors black. */
+    int score(Board board) {
+        return _material
+            * (board.pieceCount(WHITE) - board.pieceCount(BLACK))
+            + _routes * board.kingEscapeRoutes()
+            + _mobility * board.kingMobility()
+            + _distance * board.kingEscapeDistance()
+            + _attackers * board.kingAttackers()
+            + _cordon * board.kingCordon();
+    }
+
+    /** Store the features of BOARD in FEATURES[START] ...
+     *  FEATURES[START + FEATURES - 1], in the order of their indices. */
+    static void features(Board board, int[] features, int start) {
+        features[start + MATERIAL] =
+            board.pieceCount(WHITE) - board.pieceCount(BLACK);
+        features[start + ESCAPE_ROUTES] = board.kingEscapeRoutes();
+        features[start + KING_MOBILITY] = board.kingMobility();
+        features[start + ESCAPE_DISTANCE] = board.kingEscapeDistance();
+        features[start + KING_ATTACKERS] = board.kingAttackers();
+        features[start + CORDON] = board.kingCordon();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        for (int f = 0; f < FEATURES; f += 1) {
+            out.append(f == 0 ? "" : " ").append(NAMES[f]).append('=')
+                .append(_weights[f]);
+        }
+        return out.toString();
+    }
+
+    /** The weights, by feature index. */
+    private final int[] _weights;
+    /** The weights, as fields for speed in score. */
+    private final int _material, _routes, _mobility, _distance, _attackers,
+        _cordon;
+}
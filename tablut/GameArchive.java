@@ -0,0 +1,346 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.*;
+import static tablut.Piece.*;
+
+/** A file of recorded games, indexed so that any game may be read
+ *  without reading those before it, and any position in it rebuilt by
+ *  replaying its moves (as encoded by Move.code) without parsing them.
+ *  The file contains a header (the int MAGIC, the int number of games,
+ *  and the long offset of the index), the games, and the index (the long
+ *  offset of each game, in order).  Each game is the long random seed of
+ *  the game, the int move limit (see Board.moveLimit; 0 if none), a byte
+ *  holding the ordinal of the winner (EMPTY if none), a byte of flags,
+ *  the unsigned short number of moves, the starting position (as for
+ *  Board.encodedBoard) if the FROM_POSITION flag is set, and the moves,
+ *  as shorts.  A game of 100 moves thus takes about 220 bytes.  Archives
+ *  hold games of one Variant, and should be read only while playing it.
+ *  Games are added with a GameArchive.Writer.  Summarize an archive,
+ *  list a game, or print the position after some move of a game with
+ *      java -cp .. tablut.GameArchive FILE [GAME [MOVE]]
+ *  @author Mingyan Zou
+ */
+class GameArchive implements Closeable {
+
+    /** Identifies an archive file. */
+    static final int MAGIC = 0x54474131;
+
+    /** Size of the header, in bytes. */
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+
+    /** Size of the fixed part of a game, in bytes. */
+    private static final int GAME_HEADER_SIZE =
+        Long.BYTES + Integer.BYTES + 2 + Short.BYTES;
+
+    /** Size of a starting position, in bytes. */
+    private static final int POSITION_SIZE = Square.NUM_SQUARES + 1;
+
+    /** Flag set for games that do not start from the initial
+     *  position. */
+    private static final int FROM_POSITION = 1;
+
+    /** Maximum number of moves in a game. */
+    static final int MAX_MOVES = 0xffff;
+
+    /** Print the summary, game, or position requested by ARGS (see the
+     *  class comment). */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: java tablut.GameArchive FILE"
+                               + " [GAME [MOVE]]");
+            System.exit(1);
+        }
+        try (GameArchive archive = new GameArchive(args[0])) {
+            if (args.length == 1) {
+                int[] wins = new int[Piece.values().length];
+                long moves = 0;
+                for (int k = 0; k < archive.size(); k += 1) {
+                    Game game = archive.game(k);
+                    Piece winner = game.winner();
+                    wins[(winner == null ? EMPTY : winner).ordinal()] += 1;
+                    moves += game.length();
+                }
+                System.out.printf("%d games, %d moves: white %d, black %d,"
+                                  + " undecided %d%n", archive.size(),
+                                  moves, wins[WHITE.ordinal()],
+                                  wins[BLACK.ordinal()],
+                                  wins[EMPTY.ordinal()]);
+                return;
+            }
+            Game game = archive.game(Integer.parseInt(args[1]));
+            if (args.length == 2) {
+                System.out.printf("seed %d, winner %s, %d moves%n",
+                                  game.seed(), game.winner() == null
+                                  ? "none" : game.winner().toName(),
+                                  game.length());
+                for (int i = 0; i < game.length(); i += 1) {
+                    System.out.println(game.move(i));
+                }
+            } else {
+                System.out.printf("===%n%s===%n",
+                                  game.replay(Integer.parseInt(args[2])));
+            }
+        }
+    }
+
+    /** An archive whose contents are those of the file named FILENAME.
+     *  Throws IOException if the file cannot be read or is not an
+     *  archive. */
+    GameArchive(String fileName) throws IOException {
+        _channel = FileChannel.open(Paths.get(fileName), READ);
+        try {
+            ByteBuffer header = read(0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(fileName + " is not a game archive");
+            }
+            int size = header.getInt();
+            long indexOffset = header.getLong();
+            ByteBuffer index = read(indexOffset, (long) size * Long.BYTES);
+            _offsets = new long[size + 1];
+            index.asLongBuffer().get(_offsets, 0, size);
+            _offsets[size] = indexOffset;
+        } catch (IOException excp) {
+            _channel.close();
+            throw excp;
+        }
+    }
+
+    /** Return the number of games in this archive. */
+    int size() {
+        return _offsets.length - 1;
+    }
+
+    /** Return game number K (from 0). */
+    Game game(int k) throws IOException {
+        if (k < 0 || k >= size()) {
+            throw new IndexOutOfBoundsException("no game " + k);
+        }
+        return new Game(read(_offsets[k], _offsets[k + 1] - _offsets[k]));
+    }
+
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+    }
+
+    /** Return the SIZE bytes of my file starting at OFFSET. */
+    private ByteBuffer read(long offset, long size) throws IOException {
+        if (size < 0 || size > Integer.MAX_VALUE
+            || offset + size > _channel.size()) {
+            throw new IOException("game archive is truncated");
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining()) {
+            if (_channel.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("game archive is truncated");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** One recorded game. */
+    static class Game {
+
+        /** The game recorded in RECORD (see the GameArchive class
+         *  comment). */
+        private Game(ByteBuffer record) throws IOException {
+            try {
+                _seed = record.getLong();
+                _moveLimit = record.getInt();
+                int winner = record.get();
+                _winner = winner == EMPTY.ordinal() ? null
+                    : Piece.values()[winner];
+                int flags = record.get();
+                _moves = new int[record.getShort() & MAX_MOVES];
+                if ((flags & FROM_POSITION) != 0) {
+                    byte[] start = new byte[POSITION_SIZE];
+                    record.get(start);
+                    _start = new String(start, US_ASCII);
+                } else {
+                    _start = null;
+                }
+                for (int i = 0; i < _moves.length; i += 1) {
+                    _moves[i] = record.getShort() & MAX_MOVES;
+                }
+            } catch (RuntimeException excp) {
+                throw new IOException("bad game record", excp);
+            }
+        }
+
+        /** Return the random seed of this game. */
+        long seed() {
+            return _seed;
+        }
+
+        /** Return the winner of this game, or null if there was none. */
+        Piece winner() {
+            return _winner;
+        }
+
+        /** Return the number of moves in this game. */
+        int length() {
+            return _moves.length;
+        }
+
+        /** Return move number I (from 0) of this game. */
+        Move move(int i) {
+            return Move.mv(_moves[i]);
+        }
+
+        /** Return a new Board holding the position after the first N
+         *  moves of this game, with those moves to undo.  Assumes that
+         *  0 <= N <= length(). */
+        Board replay(int n) {
+            Board board = new Board();
+            if (_start != null) {
+                board.setPosition(_start);
+            }
+            if (_moveLimit > 0) {
+                board.setMoveLimit(_moveLimit);
+            }
+            for (int i = 0; i < n; i += 1) {
+                board.makeMove(_moves[i]);
+            }
+            return board;
+        }
+
+        /** Random seed. */
+        private final long _seed;
+        /** Move limit, or 0 if none. */
+        private final int _moveLimit;
+        /** Winner, or null. */
+        private final Piece _winner;
+        /** Starting position, or null if it is the initial position. */
+        private final String _start;
+        /** The moves, as encoded by Move.code. */
+        private final int[] _moves;
+    }
+
+    /** Adds games to an archive file.  Games may be added from several
+     *  threads at once.  Games added to an existing archive follow its
+     *  old index, so that the archive keeps its old contents until the
+     *  Writer is closed. */
+    static class Writer implements Closeable {
+
+        /** A Writer that adds games to the archive named FILENAME,
+         *  creating it if it does not exist. */
+        Writer(String fileName) throws IOException {
+            Path path = Paths.get(fileName);
+            boolean exists = Files.exists(path);
+            _channel = FileChannel.open(path, READ, WRITE, CREATE);
+            if (exists) {
+                try (GameArchive archive = new GameArchive(fileName)) {
+                    _offsets = Arrays.copyOf(archive._offsets,
+                                             archive.size() + 1);
+                }
+            } else {
+                _offsets = new long[] { HEADER_SIZE };
+            }
+            _size = _offsets.length - 1;
+            _end = _offsets[_size] = Math.max(HEADER_SIZE, _channel.size());
+        }
+
+        /** Add the game played on BOARD, from the start of its history
+         *  (see Board.moveHistory) to its current position, with random
+         *  seed SEED, and return its number in the archive. */
+        int add(Board board, long seed) throws IOException {
+            return add(board, seed, board.winner());
+        }
+
+        /** Add the game played on BOARD, as for add(BOARD, SEED), but
+         *  won by WINNER (null if none), as when a player forfeits. */
+        synchronized int add(Board board, long seed, Piece winner)
+            throws IOException {
+            Board start = new Board(board);
+            List<Move> moves = start.moveHistory();
+            while (start.moveCount() > 0) {
+                start.undo();
+            }
+            if (moves.size() > MAX_MOVES) {
+                throw new IOException("game too long to archive");
+            }
+            String position = start.encodedBoard();
+            boolean fromPosition =
+                !position.equals(new Board().encodedBoard());
+            ByteBuffer buf =
+                ByteBuffer.allocate(GAME_HEADER_SIZE
+                                    + (fromPosition ? POSITION_SIZE : 0)
+                                    + moves.size() * Short.BYTES);
+            buf.putLong(seed);
+            buf.putInt(board.moveLimit() == Integer.MAX_VALUE ? 0
+                       : board.moveLimit());
+            buf.put((byte) (winner == null ? EMPTY : winner).ordinal());
+            buf.put((byte) (fromPosition ? FROM_POSITION : 0));
+            buf.putShort((short) moves.size());
+            if (fromPosition) {
+                for (int i = 0; i < POSITION_SIZE; i += 1) {
+                    buf.put((byte) position.charAt(i));
+                }
+            }
+            for (Move mv : moves) {
+                buf.putShort((short) Move.code(mv.from(), mv.to()));
+            }
+            buf.flip();
+            write(buf, _end);
+            _end += buf.limit();
+            if (_size + 1 == _offsets.length) {
+                _offsets = Arrays.copyOf(_offsets, 2 * _offsets.length);
+            }
+            _size += 1;
+            _offsets[_size] = _end;
+            return _size - 1;
+        }
+
+        /** Write the index and header, completing the archive. */
+        @Override
+        public synchronized void close() throws IOException {
+            try {
+                ByteBuffer index = ByteBuffer.allocate(_size * Long.BYTES);
+                index.asLongBuffer().put(_offsets, 0, _size);
+                write(index, _end);
+                _channel.truncate(_end + index.limit());
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(_size).putLong(_end).flip();
+                write(header, 0);
+            } finally {
+                _channel.close();
+            }
+        }
+
+        /** Write the contents of BUF to my file at OFFSET. */
+        private void write(ByteBuffer buf, long offset) throws IOException {
+            while (buf.hasRemaining()) {
+                _channel.write(buf, offset + buf.position());
+            }
+        }
+
+        /** The archive file. */
+        private final FileChannel _channel;
+        /** _offsets[k] is the offset of game k, for k < _size, and
+         *  _offsets[_size] is the end of the last game. */
+        private long[] _offsets;
+        /** Number of games in the archive. */
+        private int _size;
+        /** Offset of the end of the last game. */
+        private long _end;
+    }
+
+    /** The archive file. */
+    private final FileChannel _channel;
+    /** _offsets[k] is the offset of game k, and _offsets[size()] is that
+     *  of the index, which follows the last game. */
+    private final long[] _offsets;
+
+}
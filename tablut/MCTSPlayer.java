@@ -0,0 +1,377 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static tablut.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo tree search, as an
+ *  alternative to the alpha-beta search of AI.  Each move is chosen by
+ *  a fixed number of playouts from the current position.  A playout
+ *  descends the tree of positions searched so far, choosing at each node
+ *  the child that maximizes the UCB1 bound on its mover's score, adds the
+ *  children of the leaf it reaches once that leaf has been visited,
+ *  finishes the game with random moves (see Tree.playout), and credits
+ *  the result to every node on its path.  With more than one thread,
+ *  each thread grows its own tree from the same position with its own
+ *  random moves (root parallelism), and the move chosen is the one
+ *  visited most often in all of them.  The trees are kept in arrays of
+ *  primitive values that are reused from move to move, so that searching
+ *  allocates almost nothing.
+ *  @author Mingyan Zou
+ */
+class MCTSPlayer extends Player {
+
+    /** Default number of playouts per move, shared among the threads. */
+    static final int PLAYOUTS = 20000;
+
+    /** Weight of the exploration term of the UCB1 bound. */
+    private static final double EXPLORATION = 1.4;
+
+    /** A leaf is expanded when it has been visited this many times. */
+    private static final int EXPANSION_VISITS = 1;
+
+    /** A playout that has not ended after this many random moves is
+     *  scored by the sign of the default Evaluation of its position. */
+    private static final int PLAYOUT_PLIES = 100;
+
+    /** Maximum number of nodes in each tree.  Leaves are not expanded
+     *  once a tree is full. */
+    private static final int MAX_NODES = 1 << 21;
+
+    /** Initial number of nodes allocated in each tree. */
+    private static final int INITIAL_NODES = 1 << 12;
+
+    /** Initial length of the array holding the path of a playout. */
+    private static final int INITIAL_PATH = 64;
+
+    /** Seed of the random moves of my first tree. */
+    private static final long SEED = 61;
+
+    /** A new MCTSPlayer template with no piece or controller that
+     *  searches with THREADS threads. */
+    MCTSPlayer(int threads) {
+        this(null, null, threads);
+    }
+
+    /** A new MCTSPlayer playing PIECE under control of CONTROLLER that
+     *  searches with THREADS threads. */
+    MCTSPlayer(Piece piece, Controller controller, int threads) {
+        super(piece, controller);
+        _threads = Math.max(1, threads);
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        MCTSPlayer player = new MCTSPlayer(piece, controller, _threads);
+        player._playouts = _playouts;
+        return player;
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String myMove() {
+        long start = System.nanoTime();
+        Move move = findMove(new Board(board()));
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        _controller.logComment("%s: %d playouts in %d ms (%d playouts/s,"
+                               + " %d threads)", move, _lastPlayouts,
+                               elapsed / 1000000,
+                               _lastPlayouts * 1000000000L / elapsed,
+                               _threads);
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    @Override
+    long lastNodeCount() {
+        return _lastPlayouts;
+    }
+
+    @Override
+    synchronized void close() {
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+    }
+
+    /** Set the number of playouts per move to PLAYOUTS.  It is initially
+     *  MCTSPlayer.PLAYOUTS. */
+    void setPlayouts(int playouts) {
+        _playouts = Math.max(1, playouts);
+    }
+
+    /** Return the number of threads I search with. */
+    int threads() {
+        return _threads;
+    }
+
+    /** Return the move for the side to move on BOARD that is visited most
+     *  often in playouts() playouts, assuming there is a move.  BOARD is
+     *  left unchanged. */
+    Move findMove(Board board) {
+        _lastPlayouts = 0;
+        if (_trees == null) {
+            _trees = new Tree[_threads];
+            for (int t = 0; t < _threads; t += 1) {
+                _trees[t] = new Tree(SEED + t);
+            }
+        }
+        if (_threads == 1) {
+            _trees[0].search(board, _playouts);
+        } else {
+            List<Future<?>> searches = new ArrayList<>();
+            for (int t = 0; t < _threads; t += 1) {
+                Tree tree = _trees[t];
+                Board copy = new Board(board);
+                int playouts = _playouts / _threads
+                    + (t < _playouts % _threads ? 1 : 0);
+                searches.add(pool().submit(() ->
+                                           tree.search(copy, playouts)));
+            }
+            try {
+                for (Future<?> search : searches) {
+                    search.get();
+                }
+            } catch (InterruptedException excp) {
+                throw new Error("unexpected interrupt");
+            } catch (ExecutionException excp) {
+                throw new IllegalStateException(excp.getCause());
+            }
+        }
+        Tree first = _trees[0];
+        int best = -1;
+        long bestVisits = -1;
+        for (int k = 0; k < first.rootChildren(); k += 1) {
+            long visits = 0;
+            for (Tree tree : _trees) {
+                assert tree.rootMove(k) == first.rootMove(k);
+                visits += tree.rootVisits(k);
+            }
+            if (visits > bestVisits) {
+                best = k;
+                bestVisits = visits;
+            }
+        }
+        for (Tree tree : _trees) {
+            _lastPlayouts += tree.playouts();
+        }
+        return Move.mv(first.rootMove(best));
+    }
+
+    /** Return the pool that runs my parallel searches, creating it if
+     *  need be. */
+    private synchronized ForkJoinPool pool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(_threads);
+        }
+        return _pool;
+    }
+
+    /** The tree of one thread's search.  Node 0 is the root.  For each
+     *  node i, _moves[i] is the move (see Move.code) that leads to it
+     *  from its parent, _visits[i] is the number of playouts through it,
+     *  and _scores[i] is the sum of their results in halves of a point
+     *  for the side that made _moves[i].  The children of a node, once
+     *  expanded, occupy _counts[i] consecutive nodes starting at
+     *  _children[i], which is 0 until then. */
+    private static final class Tree {
+
+        /** A tree whose random moves are determined by SEED. */
+        Tree(long seed) {
+            _random = new Random(seed);
+            _moves = new int[INITIAL_NODES];
+            _children = new int[INITIAL_NODES];
+            _counts = new int[INITIAL_NODES];
+            _visits = new int[INITIAL_NODES];
+            _scores = new int[INITIAL_NODES];
+        }
+
+        /** Replace my contents by a tree for BOARD grown by PLAYOUTS
+         *  playouts, leaving BOARD unchanged. */
+        void search(Board board, int playouts) {
+            _size = 1;
+            _children[0] = _counts[0] = _visits[0] = _scores[0] = 0;
+            _playouts = 0;
+            Piece rootTurn = board.turn();
+            expand(0, board);
+            for (int p = 0; p < playouts; p += 1) {
+                int node = 0, depth = 0;
+                Piece result;
+                while (true) {
+                    if (depth == _path.length) {
+                        _path = Arrays.copyOf(_path, 2 * depth);
+                    }
+                    _path[depth] = node;
+                    depth += 1;
+                    if (board.winner() != null) {
+                        result = board.winner();
+                        break;
+                    }
+                    if (_children[node] == 0
+                        && (_visits[node] < EXPANSION_VISITS
+                            || !expand(node, board))) {
+                        result = playout(board);
+                        break;
+                    }
+                    if (_counts[node] == 0) {
+                        result = board.turn().opponent();
+                        break;
+                    }
+                    node = select(node);
+                    board.makeMove(_moves[node]);
+                    _plies += 1;
+                }
+                for (int d = 0; d < depth; d += 1) {
+                    int n = _path[d];
+                    Piece mover =
+                        d % 2 == 1 ? rootTurn : rootTurn.opponent();
+                    _visits[n] += 1;
+                    _scores[n] += result == mover ? 2 : result == null ? 1
+                        : 0;
+                }
+                for (; _plies > 0; _plies -= 1) {
+                    board.undo();
+                }
+                _playouts += 1;
+            }
+        }
+
+        /** Return the child of NODE with the greatest UCB1 bound: its
+         *  mover's mean score plus EXPLORATION times the square root of
+         *  the log of the visits to NODE over the visits to the child.
+         *  Unvisited children come first. */
+        private int select(int node) {
+            int first = _children[node], end = first + _counts[node],
+                best = first;
+            double logVisits = Math.log(_visits[node]),
+                bestBound = Double.NEGATIVE_INFINITY;
+            for (int c = first; c < end; c += 1) {
+                int visits = _visits[c];
+                if (visits == 0) {
+                    return c;
+                }
+                double bound = _scores[c] / (2.0 * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (bound > bestBound) {
+                    best = c;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+
+        /** Add the children of NODE, whose position is that of BOARD, and
+         *  return true, or return false if the tree has no room for
+         *  them. */
+        private boolean expand(int node, Board board) {
+            int n = board.legalMoves(board.turn(), _buffer, 0);
+            if (_size + n > _moves.length) {
+                if (_size + n > MAX_NODES) {
+                    return false;
+                }
+                int capacity = Math.min(MAX_NODES,
+                                        Math.max(2 * _moves.length,
+                                                 _size + n));
+                _moves = Arrays.copyOf(_moves, capacity);
+                _children = Arrays.copyOf(_children, capacity);
+                _counts = Arrays.copyOf(_counts, capacity);
+                _visits = Arrays.copyOf(_visits, capacity);
+                _scores = Arrays.copyOf(_scores, capacity);
+            }
+            _children[node] = _size;
+            _counts[node] = n;
+            for (int k = 0; k < n; k += 1) {
+                int c = _size + k;
+                _moves[c] = _buffer[k];
+                _children[c] = _counts[c] = _visits[c] = _scores[c] = 0;
+            }
+            _size += n;
+            return true;
+        }
+
+        /** Finish the game on BOARD with random moves and return its
+         *  winner, or null if it is drawn.  The game ends early when the
+         *  king is sure to escape on white's next move (since it has an
+         *  open route to escape and it is white's move, or two routes),
+         *  and is scored by the default Evaluation after PLAYOUT_PLIES
+         *  moves.  The moves made are counted in _plies. */
+        private Piece playout(Board board) {
+            for (int k = 0; k < PLAYOUT_PLIES; k += 1) {
+                if (board.winner() != null) {
+                    return board.winner();
+                }
+                Piece side = board.turn();
+                int routes = board.kingEscapeRoutes();
+                if (routes > (side == WHITE ? 0 : 1)) {
+                    return WHITE;
+                }
+                int n = board.legalMoves(side, _buffer, 0);
+                if (n == 0) {
+                    return side.opponent();
+                }
+                board.makeMove(_buffer[_random.nextInt(n)]);
+                _plies += 1;
+            }
+            int score = Evaluation.DEFAULT.score(board);
+            return score > 0 ? WHITE : score < 0 ? BLACK : null;
+        }
+
+        /** Return the number of children of the root. */
+        int rootChildren() {
+            return _counts[0];
+        }
+
+        /** Return the move to child K of the root. */
+        int rootMove(int k) {
+            return _moves[_children[0] + k];
+        }
+
+        /** Return the number of visits to child K of the root. */
+        int rootVisits(int k) {
+            return _visits[_children[0] + k];
+        }
+
+        /** Return the number of playouts of my last search. */
+        int playouts() {
+            return _playouts;
+        }
+
+        /** Source of random moves. */
+        private final Random _random;
+        /** The nodes (see the class comment). */
+        private int[] _moves, _children, _counts, _visits, _scores;
+        /** Number of nodes in use. */
+        private int _size;
+        /** Number of playouts of the last search. */
+        private int _playouts;
+        /** Moves made on the board being searched during the current
+         *  playout. */
+        private int _plies;
+        /** The nodes on the path of the current playout. */
+        private int[] _path = new int[INITIAL_PATH];
+        /** Moves generated during a playout. */
+        private final int[] _buffer = new int[Board.MAX_MOVES];
+    }
+
+    /** Number of threads, and of trees. */
+    private final int _threads;
+    /** One tree for each thread, or null before my first search. */
+    private Tree[] _trees;
+    /** Number of playouts per move. */
+    private int _playouts = PLAYOUTS;
+    /** Number of playouts made in choosing my last move. */
+    private long _lastPlayouts;
+    /** Thread pool for parallel searches, or null if not yet needed. */
+    private ForkJoinPool _pool;
+}
@@ -15,18 +15,60 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the options --display,
+     *  --log=FILE, --strict, --threads=N (number of search threads
+     *  used by automated players), --book=FILE (opening book used
+     *  by automated players), --tablebases=DIR (directory of endgame
+     *  tablebases used by automated players), --ponder (automated
+     *  players search while their opponents think), --stats (automated
+     *  players log statistics of each search), --engine=HOST:PORT
+     *  (automated players are RemotePlayers using the engine served at
+     *  HOST:PORT, given the number of milliseconds per move given by
+     *  --time), --archive=FILE (games played are added to the
+     *  GameArchive FILE), and --variant=NAME (the Variant played, by
+     *  default that named by the system property Variant.PROPERTY, or
+     *  tablut).  With --analyze=FILE, instead of playing, analyzes the
+     *  positions in FILE (see Analyzer), appending the results to the
+     *  file given by --output (default FILE.out), searching to the depth
+     *  given by --depth or for the number of milliseconds given by
+     *  --time. */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1} "
+                            + "--threads=(\\d+) --book= --tablebases= --ponder "
+                            + "--stats --analyze= --output= --depth=(\\d+) "
+                            + "--time=(\\d+) --engine= --archive= "
+                            + "--variant= --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--strict] [--threads=N]"
+                               + " [--book=FILE] [--tablebases=DIR]"
+                               + " [--ponder] [--stats]"
+                               + " [--engine=HOST:PORT [--time=MS]]"
+                               + " [--archive=FILE] [--variant=NAME]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.println("       java tablut.Main --analyze=FILE"
+                               + " [--output=FILE] [--depth=N] [--time=MS]"
+                               + " [--threads=N] [--variant=NAME]");
             System.exit(1);
         }
 
+        if (options.contains("--variant")) {
+            try {
+                Variant.select(options.getFirst("--variant"));
+            } catch (IllegalArgumentException excp) {
+                System.err.println(excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--analyze")) {
+            analyze(options);
+            System.exit(0);
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -63,6 +105,29 @@ public class Main {
 
     }
 
+    /** Analyze positions as indicated by OPTIONS (see main), without
+     *  creating a Controller. */
+    private static void analyze(CommandArgs options) {
+        String input = options.getFirst("--analyze");
+        String output = options.contains("--output")
+            ? options.getFirst("--output") : input + ".out";
+        int depth = options.contains("--depth") ? options.getInt("--depth")
+            : options.contains("--time") ? Analyzer.TIMED_DEPTH
+            : Analyzer.DEPTH;
+        long time = options.contains("--time") ? options.getInt("--time") : 0;
+        int threads = options.contains("--threads")
+            ? options.getInt("--threads")
+            : Runtime.getRuntime().availableProcessors();
+        try {
+            int count = new Analyzer(depth, time, threads)
+                .analyze(input, output);
+            System.err.printf("Analyzed %d positions%n", count);
+        } catch (IOException excp) {
+            System.err.printf("Could not analyze: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -96,7 +161,56 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+        int threads = 1;
+        if (options.contains("--threads")) {
+            threads = options.getInt("--threads");
+        }
+
+        OpeningBook book = null;
+        if (options.contains("--book")) {
+            try {
+                book = new OpeningBook(options.getFirst("--book"));
+            } catch (IOException excp) {
+                throw error("Could not open opening book: %s",
+                            excp.getMessage());
+            }
+        }
+
+        Tablebase[][] tablebases = null;
+        if (options.contains("--tablebases")) {
+            try {
+                tablebases = Tablebase.load(options.getFirst("--tablebases"));
+            } catch (IOException excp) {
+                throw error("Could not open tablebases: %s",
+                            excp.getMessage());
+            }
+        }
+
+        Player autoPlayer;
+        if (options.contains("--engine")) {
+            long time = options.contains("--time") ? options.getInt("--time")
+                : RemotePlayer.MOVE_TIME;
+            autoPlayer = new RemotePlayer(options.getFirst("--engine"), time);
+        } else {
+            AI ai = new AI(threads, book, tablebases);
+            ai.setPondering(options.contains("--ponder"));
+            ai.setLogStats(options.contains("--stats"));
+            autoPlayer = ai;
+        }
+
+        Controller controller =
+            new Controller(view, log, reporter, manualPlayer, autoPlayer,
+                           options.contains("--strict"));
+        controller.setEngine("mcts", new MCTSPlayer(threads));
+        if (options.contains("--archive")) {
+            try {
+                controller.setArchive(
+                    new GameArchive.Writer(options.getFirst("--archive")));
+            } catch (IOException excp) {
+                throw error("Could not open game archive: %s",
+                            excp.getMessage());
+            }
+        }
+        return controller;
     }
 }
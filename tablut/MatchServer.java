@@ -0,0 +1,55 @@
+package tablut;
+
+/** Hosts a match between two engines served by EngineServers (for
+ *  example, two builds of this program), playing many games at once.
+ *  Run with
+ *      java -cp .. tablut.MatchServer ENGINE1 ENGINE2 [GAMES [CONCURRENT
+ *          [MS [SEED]]]]
+ *  where each ENGINE is HOST:PORT or PORT, GAMES (default GAMES) is the
+ *  number of games, CONCURRENT (default CONCURRENT) the number played at
+ *  once, and MS (default RemotePlayer.MOVE_TIME) the milliseconds given
+ *  to each move.  The games are played as by Tournament, in pairs with
+ *  the same opening and colors reversed, each player with its own
+ *  connection to its engine.  Since the engines do the searching, the
+ *  threads that run the games here spend nearly all their time waiting
+ *  for replies, so CONCURRENT may well exceed the number of processors.
+ *  The summary of the Tournament is printed, followed by the score of
+ *  ENGINE1 against ENGINE2.
+ *  @author Mingyan Zou
+ */
+class MatchServer {
+
+    /** Default number of games. */
+    private static final int GAMES = 20;
+
+    /** Default number of games played at once. */
+    private static final int CONCURRENT = 8;
+
+    /** Seed for the openings of the games. */
+    private static final long SEED = 61;
+
+    /** Play the match described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java tablut.MatchServer ENGINE1"
+                               + " ENGINE2 [GAMES [CONCURRENT [MS [SEED]]]]");
+            System.exit(1);
+        }
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : GAMES;
+        int concurrent =
+            args.length > 3 ? Integer.parseInt(args[3]) : CONCURRENT;
+        long time = args.length > 4 ? Long.parseLong(args[4])
+            : RemotePlayer.MOVE_TIME;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : SEED;
+
+        Tournament match =
+            new Tournament(games, seed, new RemotePlayer(args[0], time),
+                           new RemotePlayer(args[1], time));
+        match.play(concurrent);
+        match.printSummary(System.out);
+        double score = match.firstScore();
+        System.out.printf("%s against %s: %.1f%% (Elo %+.0f)%n", args[0],
+                          args[1], 100 * score, Tournament.elo(score, games));
+    }
+
+}
@@ -3,12 +3,12 @@ package tablut;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static tablut.Square.sq;
 import static tablut.Square.NUM_SQUARES;
 import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
+import static tablut.Square.SYMMETRY;
 import static tablut.Utils.*;
 
 /** A move in the game of Tablut. As for Squares, Moves are immutable
@@ -20,10 +20,13 @@ import static tablut.Utils.*;
 final class Move {
 
     /** The syntax for a move, using either forms CR-C (horizontal moves)
-     *  or CR-R (vertical moves), where C is a column letter (a-i or A-I) and
-     *  R is a row number (1-9). */
+     *  or CR-R (vertical moves), where C is a column letter (a-i on the
+     *  9x9 board) and R is a row number (1-9).  This is the syntax that
+     *  mv(String) and isGrammaticalMove accept, although they do not use
+     *  the pattern. */
     static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
+        Pattern.compile(String.format("((%1$s)(%2$s))-(?:(%1$s)|(%2$s))",
+                                      Square.COL, Square.ROW));
 
     /** Return the square moved from. */
     Square from() {
@@ -36,7 +39,9 @@ final class Move {
     }
 
     /** Return the unique Move FROM-TO, or null if this is not a valid
-     *  move. */
+     *  move.  All valid Moves are created when this class is initialized,
+     *  so that afterwards this only reads MOVES, and may be called from
+     *  several threads at once. */
     static Move mv(Square from, Square to) {
         if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
             return null;
@@ -48,27 +53,63 @@ final class Move {
         return MOVES[from.index()][to.index()];
     }
 
+    /** Return the encoding of the move FROM-TO used in move buffers: the
+     *  index of FROM in the Square.INDEX_BITS bits above FROM_SHIFT and
+     *  the index of TO in the bits below (bits 7-13 and 0-6 on the 9x9
+     *  board).  Codes are less than 1 << 16 (see Variant.MAX_SIZE). */
+    static int code(Square from, Square to) {
+        return (from.index() << FROM_SHIFT) | to.index();
+    }
+
+    /** Return the index of the square moved from in the move encoded as
+     *  CODE. */
+    static int fromIndex(int code) {
+        return code >> FROM_SHIFT;
+    }
+
+    /** Return the index of the square moved to in the move encoded as
+     *  CODE. */
+    static int toIndex(int code) {
+        return code & SQUARE_MASK;
+    }
+
+    /** Return the encoding of the move to which symmetry T (see
+     *  Square.SYMMETRY) carries the move encoded as CODE. */
+    static int symmetric(int code, int t) {
+        int[] sym = SYMMETRY[t];
+        return (sym[fromIndex(code)] << FROM_SHIFT) | sym[toIndex(code)];
+    }
+
+    /** Return the unique Move encoded as CODE (see code). */
+    static Move mv(int code) {
+        return mv(sq(fromIndex(code)), sq(toIndex(code)));
+    }
+
     /** Return the Move denoted by STR, if STR denotes a move with
-     *  valid syntax, and null otherwise. */
+     *  valid syntax, and null otherwise.  May be called from several
+     *  threads at once. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
+        int dash = str.indexOf('-');
+        Square from = dash < 0 ? null : Square.parse(str, 0, dash);
+        if (from == null) {
+            return null;
+        } else if (str.length() == dash + 2
+                   && Square.isColumn(str.charAt(dash + 1))) {
+            return mv(from, sq(str.charAt(dash + 1) - 'a', from.row()));
         }
-        return null;
+        int row = Square.parseRow(str, dash + 1, str.length());
+        return row < 0 ? null : mv(from, sq(from.col(), row));
     }
 
-    /** Return true iff STR has the right format for a Move. */
+    /** Return true iff STR has the right format for a Move (see
+     *  MOVE_PATTERN). */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        int dash = str.indexOf('-'), n = str.length();
+        if (dash < 0 || Square.parse(str, 0, dash) == null) {
+            return false;
+        }
+        return n == dash + 2 && Square.isColumn(str.charAt(dash + 1))
+            || Square.parseRow(str, dash + 1, n) >= 0;
     }
 
     @Override
@@ -93,7 +134,7 @@ final class Move {
     private Move(Square from, Square to) {
         _from = from; _to = to;
         if (_from.col() == _to.col()) {
-            _str = String.format("%s-%c", from, (char) to.row() + '1');
+            _str = String.format("%s-%d", from, to.row() + 1);
         } else {
             _str = String.format("%s-%c", from, (char) to.col() + 'a');
         }
@@ -109,6 +150,11 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
+    /** Position of the from-square index in an encoded move. */
+    private static final int FROM_SHIFT = Square.INDEX_BITS;
+    /** Mask selecting the to-square index of an encoded move. */
+    private static final int SQUARE_MASK = (1 << FROM_SHIFT) - 1;
+
     /** The cache of all Moves created. */
     private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
 
@@ -134,6 +180,4 @@ final class Move {
     private final Square _from, _to;
     /** The printed form of this Move. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
@@ -0,0 +1,174 @@
+package tablut;
+
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/** A table of precomputed best moves for positions early in the game,
+ *  read from a file that is mapped into memory.  The file contains a
+ *  header (the int MAGIC followed by the int number of entries) and then
+ *  the entries, each a long canonical position key (see
+ *  Board.canonicalKey) followed by an int move (see Move.code) for the
+ *  canonical form of the position, sorted by key.  Thus one entry serves
+ *  a position and all its symmetric images.
+ *  A book may be built by self-play with
+ *      java -cp .. tablut.OpeningBook FILE [GAMES [PLIES [DEPTH]]]
+ *  @author Mingyan Zou
+ */
+class OpeningBook {
+
+    /** Value returned by move for positions not in the book. */
+    static final int NO_MOVE = TranspositionTable.NO_MOVE;
+
+    /** Identifies a book file. */
+    static final int MAGIC = 0x54424B32;
+
+    /** Size of the header and of each entry, in bytes. */
+    private static final int
+        HEADER_SIZE = 2 * Integer.BYTES,
+        ENTRY_SIZE = Long.BYTES + Integer.BYTES;
+
+    /** Default parameters for building a book: the number of self-play
+     *  games, the number of plies recorded from each, and the depth of
+     *  the searches that choose the recorded moves. */
+    private static final int
+        GAMES = 64,
+        PLIES = 8,
+        DEPTH = 5;
+
+    /** One in this many moves played while building a book is chosen at
+     *  random rather than by search, so that games vary. */
+    private static final int RANDOM_MOVE_ODDS = 4;
+
+    /** Random seed used while building a book. */
+    private static final long SEED = 61;
+
+    /** A book whose contents are those of the file named FILENAME.
+     *  Throws IOException if the file cannot be read or is not a
+     *  book. */
+    OpeningBook(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()) {
+            _entries = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+        }
+        if (_entries.capacity() < HEADER_SIZE
+            || _entries.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not an opening book");
+        }
+        _size = _entries.getInt(Integer.BYTES);
+        if (_entries.capacity() != HEADER_SIZE + (long) _size * ENTRY_SIZE) {
+            throw new IOException(fileName + " is truncated");
+        }
+    }
+
+    /** Return the number of entries in this book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the book move (see Move.code) for the position with key
+     *  KEY, or NO_MOVE if the position is not in the book. */
+    int move(long key) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int posn = HEADER_SIZE + mid * ENTRY_SIZE;
+            int cmp = Long.compare(_entries.getLong(posn), key);
+            if (cmp == 0) {
+                return _entries.getInt(posn + Long.BYTES);
+            } else if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return NO_MOVE;
+    }
+
+    /** Return the book move (see Move.code) for BOARD, or NO_MOVE if
+     *  BOARD is not in the book. */
+    int move(Board board) {
+        int sym = board.canonicalSymmetry();
+        int code = move(board.symmetricKey(sym));
+        if (code == NO_MOVE) {
+            return NO_MOVE;
+        }
+        return Move.symmetric(code, Square.INVERSE_SYMMETRY[sym]);
+    }
+
+    /** Write the book whose moves are given by ENTRIES (a map from
+     *  canonical position keys to encoded moves for the canonical
+     *  positions) to the file named FILENAME. */
+    static void write(String fileName, Map<Long, Integer> entries)
+        throws IOException {
+        TreeMap<Long, Integer> sorted = new TreeMap<>(entries);
+        try (DataOutputStream out =
+             new DataOutputStream(new BufferedOutputStream(
+                 new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(sorted.size());
+            for (Map.Entry<Long, Integer> entry : sorted.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    /** Build a book by self-play and write it to the file ARGS[0].  The
+     *  optional ARGS[1], ARGS[2], and ARGS[3] give the number of games
+     *  (default GAMES), the plies recorded from each (default PLIES), and
+     *  the search depth (default DEPTH). */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java tablut.OpeningBook FILE"
+                               + " [GAMES [PLIES [DEPTH]]]");
+            System.exit(1);
+        }
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : GAMES;
+        int plies = args.length > 2 ? Integer.parseInt(args[2]) : PLIES;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : DEPTH;
+
+        AI ai = new AI(Runtime.getRuntime().availableProcessors());
+        Random random = new Random(SEED);
+        Map<Long, Integer> book = new HashMap<>();
+        for (int g = 0; g < games; g += 1) {
+            Board board = new Board();
+            for (int p = 0; p < plies && board.winner() == null; p += 1) {
+                int sym = board.canonicalSymmetry();
+                Integer best = book.get(board.symmetricKey(sym));
+                if (best == null) {
+                    Move mv = ai.findMove(board, depth);
+                    best = Move.code(mv.from(), mv.to());
+                    book.put(board.symmetricKey(sym),
+                             Move.symmetric(best, sym));
+                } else {
+                    best = Move.symmetric(best, Square.INVERSE_SYMMETRY[sym]);
+                }
+                if (random.nextInt(RANDOM_MOVE_ODDS) == 0) {
+                    List<Move> moves = board.legalMoves(board.turn());
+                    board.makeMove(moves.get(random.nextInt(moves.size())));
+                } else {
+                    board.makeMove(best);
+                }
+            }
+            System.err.printf("game %d: %d positions%n", g + 1, book.size());
+        }
+        write(args[0], book);
+    }
+
+    /** The mapped contents of the book file. */
+    private final MappedByteBuffer _entries;
+    /** Number of entries in the book. */
+    private final int _size;
+
+}
@@ -41,6 +41,17 @@ enum Piece {
         }
     }
 
+    /** Return the Piece whose symbol (as returned by toString) begins
+     *  with SYMBOL, or null if there is none. */
+    static Piece fromSymbol(char symbol) {
+        for (Piece p : values()) {
+            if (p._symbol.charAt(0) == symbol) {
+                return p;
+            }
+        }
+        return null;
+    }
+
     /** Return my printed form for use in messages. */
     String toName() {
         return _name;
@@ -39,6 +39,17 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return the number of positions examined in choosing my last move,
+     *  or 0 if unknown. */
+    long lastNodeCount() {
+        return 0;
+    }
+
+    /** Release any resources I hold outside this program.  Called when
+     *  I am no longer needed to play. */
+    void close() {
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
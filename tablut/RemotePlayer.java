@@ -0,0 +1,195 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static tablut.Utils.error;
+
+/** A Player whose moves are chosen by an engine in another program,
+ *  reached over TCP through the protocol described in EngineServer.
+ *  Each RemotePlayer has its own connection, opened when it is first
+ *  asked for a move.  The engine is given a fixed time per move; an
+ *  engine that does not answer within TIMEOUT_FACTOR times that time
+ *  plus LATENCY milliseconds, or that answers with anything but a legal
+ *  move, forfeits: the player reports an error and answers "quit".
+ *  @author Mingyan Zou
+ */
+class RemotePlayer extends Player {
+
+    /** Default time per move, in milliseconds. */
+    static final long MOVE_TIME = 1000;
+
+    /** An engine may take TIMEOUT_FACTOR times its time per move plus
+     *  LATENCY milliseconds to reply, allowing for slow machines and
+     *  engines other than AI, which stops at its deadline (see
+     *  AI.findMove). */
+    private static final int
+        TIMEOUT_FACTOR = 4,
+        LATENCY = 1000;
+
+    /** Form of an engine's answer to "go". */
+    private static final Pattern MOVE_REPLY =
+        Pattern.compile("move\\s+(\\S+)\\s+(\\d+)");
+
+    /** A new RemotePlayer template with no piece or controller, whose
+     *  moves are chosen by the engine at ADDRESS (of the form HOST:PORT,
+     *  or PORT alone for a port on the local host), given MOVETIME
+     *  milliseconds per move. */
+    RemotePlayer(String address, long moveTime) {
+        this(null, null, hostOf(address), portOf(address), moveTime);
+    }
+
+    /** A new RemotePlayer playing PIECE under control of CONTROLLER,
+     *  whose moves are chosen by the engine at HOST and PORT, given
+     *  MOVETIME milliseconds per move. */
+    private RemotePlayer(Piece piece, Controller controller, String host,
+                         int port, long moveTime) {
+        super(piece, controller);
+        _host = host;
+        _port = port;
+        _moveTime = moveTime;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new RemotePlayer(piece, controller, _host, _port, _moveTime);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String myMove() {
+        try {
+            if (_socket == null) {
+                connect();
+            }
+            Board start = new Board(board());
+            List<Move> history = start.moveHistory();
+            while (start.moveCount() > 0) {
+                start.undo();
+            }
+            StringBuilder request =
+                new StringBuilder("position ").append(start.encodedBoard());
+            for (Move mv : history) {
+                request.append(' ').append(mv);
+            }
+            expect(request(request.toString()), "ok");
+            String reply = request("go " + _moveTime);
+            Matcher mat = MOVE_REPLY.matcher(reply);
+            Move move = mat.matches() ? Move.mv(mat.group(1)) : null;
+            if (move == null || !board().isLegal(move)) {
+                throw new IOException("bad reply: " + reply);
+            }
+            _lastNodeCount = Long.parseLong(mat.group(2));
+            _controller.reportMove(move);
+            return move.toString();
+        } catch (IOException | NumberFormatException excp) {
+            _controller.reportError("Engine at %s:%d failed: %s", _host,
+                                    _port, excp.getMessage());
+            close();
+            return "quit";
+        }
+    }
+
+    @Override
+    long lastNodeCount() {
+        return _lastNodeCount;
+    }
+
+    @Override
+    void close() {
+        if (_socket != null) {
+            _out.println("quit");
+            try {
+                _socket.close();
+            } catch (IOException excp) {
+                /* Ignore IOException. */
+            }
+            _socket = null;
+        }
+    }
+
+    /** Connect to my engine and exchange greetings. */
+    private void connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(_host, _port), LATENCY);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE,
+                                               TIMEOUT_FACTOR * _moveTime
+                                               + LATENCY));
+            _in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), UTF_8));
+            _out = new PrintWriter(
+                new OutputStreamWriter(socket.getOutputStream(), UTF_8),
+                true);
+        } catch (IOException excp) {
+            socket.close();
+            throw excp;
+        }
+        _socket = socket;
+        expect(request(EngineServer.HELLO), EngineServer.HELLO);
+    }
+
+    /** Send LINE to my engine and return its answer.  A timeout while
+     *  waiting for it raises SocketTimeoutException. */
+    private String request(String line) throws IOException {
+        _out.println(line);
+        String reply = _in.readLine();
+        if (reply == null) {
+            throw new IOException("connection closed");
+        }
+        return reply.trim();
+    }
+
+    /** Throw an IOException unless REPLY is EXPECTED. */
+    private static void expect(String reply, String expected)
+        throws IOException {
+        if (!reply.equals(expected)) {
+            throw new IOException("bad reply: " + reply);
+        }
+    }
+
+    /** Return the host part of ADDRESS (see the constructor). */
+    private static String hostOf(String address) {
+        int colon = address.lastIndexOf(':');
+        return colon < 0 ? "localhost" : address.substring(0, colon);
+    }
+
+    /** Return the port part of ADDRESS (see the constructor). */
+    private static int portOf(String address) {
+        String port = address.substring(address.lastIndexOf(':') + 1);
+        if (!port.matches("\\d{1,5}") || Integer.parseInt(port) > 65535) {
+            throw error("bad engine address: %s", address);
+        }
+        return Integer.parseInt(port);
+    }
+
+    /** Host name of my engine. */
+    private final String _host;
+    /** Port of my engine. */
+    private final int _port;
+    /** Milliseconds allowed for each move. */
+    private final long _moveTime;
+    /** My connection to the engine, or null if not connected. */
+    private Socket _socket;
+    /** Replies from my engine. */
+    private BufferedReader _in;
+    /** Requests to my engine. */
+    private PrintWriter _out;
+    /** Positions searched by the engine for my last move. */
+    private long _lastNodeCount;
+
+}
@@ -0,0 +1,407 @@
+package tablut;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Timing harness for the Tablut AI.  Not part of the game itself; run
+ *  it with
+ *      java -cp .. tablut.SearchBench threads [DEPTH [MAXTHREADS]]
+ *      java -cp .. tablut.SearchBench ordering [DEPTH]
+ *      java -cp .. tablut.SearchBench pvs [DEPTH]
+ *      java -cp .. tablut.SearchBench perft [DEPTH]
+ *      java -cp .. tablut.SearchBench ops [DEPTH]
+ *      java -cp .. tablut.SearchBench render [MOVES]
+ *      java -cp .. tablut.SearchBench mcts [PLAYOUTS [MAXTHREADS]]
+ *  adding -Dtablut.variant=NAME to time another Variant.
+ *  @author Mingyan Zou
+ */
+class SearchBench {
+
+    /** Default search depth. */
+    private static final int DEPTH = 4;
+
+    /** Number of times each search is timed.  The best time is used. */
+    private static final int TRIALS = 3;
+
+    /** Minimum time spent timing each operation in "ops", in
+     *  nanoseconds. */
+    private static final long OP_TIME = 1000000000L;
+
+    /** Default number of moves of the game painted by "render". */
+    private static final int RENDER_MOVES = 100;
+
+    /** Seed for the game painted by "render". */
+    private static final long RENDER_SEED = 61;
+
+    /** The fixed suite of test positions for Tablut, in the format of
+     *  Board.encodedBoard.  The first is the initial position; the others
+     *  arise after a few moves from it. */
+    private static final String[] TABLUT_POSITIONS = {
+        "B---BBB-------B--------W----B---W---BBBWWKWWBBB---W---B----W-----"
+        + "---B-------BBB---",
+        "B---BBB-------B-W------W----B---W---BBBWWKW--BB---W--BB----W-----"
+        + "---B-------BBB---",
+        "B---BBB-----B-------W-------B---W---BBBWWKWWBBB---W---B----W-----"
+        + "---B-------BBB---",
+        "B---BBB-------B--------W----B--W----BBBWW-WWBBB-W-KB-------WB----"
+        + "---B--------B----",
+        "W----BB-----BB------W--W----B-----B--BBW-KWWBBB---W---B----W-----"
+        + "--WB-------BB--B-",
+    };
+
+    /** The positions timed: TABLUT_POSITIONS, or only the initial
+     *  position in other variants. */
+    static final String[] POSITIONS =
+        Board.VARIANT == Variant.TABLUT ? TABLUT_POSITIONS
+        : new String[] { new Board().encodedBoard() };
+
+    /** Run the benchmark named by ARGS[0] (default "threads") with the
+     *  remaining ARGS as its parameters. */
+    public static void main(String... args) {
+        String mode = args.length > 0 ? args[0] : "threads";
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : DEPTH;
+        switch (mode) {
+        case "threads":
+            threads(depth,
+                    args.length > 2 ? Integer.parseInt(args[2])
+                    : Runtime.getRuntime().availableProcessors());
+            break;
+        case "ordering":
+            ordering(depth);
+            break;
+        case "pvs":
+            pvs(depth);
+            break;
+        case "perft":
+            perft(args.length > 1 ? depth : 3);
+            break;
+        case "ops":
+            ops(depth);
+            break;
+        case "render":
+            render(args.length > 1 ? depth : RENDER_MOVES);
+            break;
+        case "mcts":
+            mcts(args.length > 1 ? depth : MCTSPlayer.PLAYOUTS,
+                 args.length > 2 ? Integer.parseInt(args[2])
+                 : Runtime.getRuntime().availableProcessors());
+            break;
+        default:
+            System.err.printf("Unknown benchmark: %s%n", mode);
+            System.exit(1);
+        }
+    }
+
+    /** Return a new board set to ENCODED (see Board.setPosition). */
+    static Board position(String encoded) {
+        Board board = new Board();
+        board.setPosition(encoded);
+        return board;
+    }
+
+    /** Search the initial position to DEPTH with 1, 2, 4, ... up to
+     *  MAXTHREADS threads, reporting nodes/sec and the speedup over one
+     *  thread for each thread count.  Reports an error if a parallel
+     *  search chooses a different move than the sequential one. */
+    static void threads(int depth, int maxThreads) {
+        System.out.printf("%7s %12s %10s %12s %8s  %s%n",
+                          "threads", "nodes", "ms", "nodes/s", "speedup",
+                          "move");
+        long baseTime = 0;
+        Move baseMove = null;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            AI ai = new AI(threads);
+            long best = Long.MAX_VALUE;
+            Move move = null;
+            for (int k = 0; k < TRIALS; k += 1) {
+                ai.setMoveOrdering(true);
+                long start = System.nanoTime();
+                move = ai.findMove(new Board(), depth);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            if (threads == 1) {
+                baseTime = best;
+                baseMove = move;
+            } else if (move != baseMove) {
+                System.err.printf("move differs from 1 thread: %s vs. %s%n",
+                                  move, baseMove);
+            }
+            System.out.printf("%7d %12d %10d %12d %8.2f  %s%n",
+                              threads, ai.lastNodeCount(), best / 1000000,
+                              ai.lastNodeCount() * 1000000000L / best,
+                              (double) baseTime / best, move);
+        }
+    }
+
+    /** Search each of POSITIONS to DEPTH with and without move ordering,
+     *  reporting the nodes searched in each case. */
+    static void ordering(int depth) {
+        System.out.printf("%8s %12s %12s %8s%n",
+                          "position", "unordered", "ordered", "ratio");
+        long totalPlain = 0, totalOrdered = 0;
+        for (int i = 0; i < POSITIONS.length; i += 1) {
+            AI ai = new AI(1);
+            ai.setMoveOrdering(false);
+            ai.findMove(position(POSITIONS[i]), depth);
+            long plain = ai.lastNodeCount();
+            ai.setMoveOrdering(true);
+            ai.findMove(position(POSITIONS[i]), depth);
+            long ordered = ai.lastNodeCount();
+            totalPlain += plain;
+            totalOrdered += ordered;
+            System.out.printf("%8d %12d %12d %8.2f%n", i, plain, ordered,
+                              (double) plain / ordered);
+        }
+        System.out.printf("%8s %12d %12d %8.2f%n", "total", totalPlain,
+                          totalOrdered, (double) totalPlain / totalOrdered);
+    }
+
+    /** Search each of POSITIONS to DEPTH by plain alpha-beta search and
+     *  by principal variation search, both without forward pruning,
+     *  reporting the nodes searched and the time taken to reach DEPTH
+     *  (the best of TRIALS searches, each starting with an empty
+     *  transposition table) in each case, and whether the two chose
+     *  different moves. */
+    static void pvs(int depth) {
+        System.out.printf("%8s %12s %8s %12s %8s %8s %8s%n", "position",
+                          "alpha-beta", "ms", "pvs", "ms", "ratio",
+                          "same");
+        long totalPlain = 0, totalPVS = 0, timePlain = 0, timePVS = 0;
+        for (int i = 0; i < POSITIONS.length; i += 1) {
+            AI ai = new AI(1);
+            long[] plain = new long[2], pvs = new long[2];
+            ai.setPruning(0);
+            ai.setPrincipalVariation(false);
+            Move plainMove = timeSearch(ai, POSITIONS[i], depth, plain);
+            ai.setPrincipalVariation(true);
+            Move pvsMove = timeSearch(ai, POSITIONS[i], depth, pvs);
+            totalPlain += plain[0];
+            totalPVS += pvs[0];
+            timePlain += plain[1];
+            timePVS += pvs[1];
+            System.out.printf("%8d %12d %8d %12d %8d %8.2f %8s%n", i,
+                              plain[0], plain[1] / 1000000, pvs[0],
+                              pvs[1] / 1000000, (double) plain[0] / pvs[0],
+                              plainMove == pvsMove ? "yes" : "no");
+        }
+        System.out.printf("%8s %12d %8d %12d %8d %8.2f%n", "total",
+                          totalPlain, timePlain / 1000000, totalPVS,
+                          timePVS / 1000000, (double) totalPlain / totalPVS);
+    }
+
+    /** Search ENCODED (see Board.setPosition) to DEPTH with AI TRIALS
+     *  times, clearing its transposition table before each search, and
+     *  return the move found.  Sets RESULT[0] to the number of nodes
+     *  searched and RESULT[1] to the best time taken, in nanoseconds. */
+    private static Move timeSearch(AI ai, String encoded, int depth,
+                                   long[] result) {
+        Move move = null;
+        result[1] = Long.MAX_VALUE;
+        for (int k = 0; k < TRIALS; k += 1) {
+            ai.setMoveOrdering(true);
+            long start = System.nanoTime();
+            move = ai.findMove(position(encoded), depth);
+            result[1] = Math.min(result[1], System.nanoTime() - start);
+        }
+        result[0] = ai.lastNodeCount();
+        return move;
+    }
+
+    /** Report perft counts to DEPTH for each of POSITIONS, with the speed
+     *  at which they were counted. */
+    static void perft(int depth) {
+        System.out.printf("%8s %5s %14s %10s %12s%n",
+                          "position", "depth", "leaves", "ms", "nodes/s");
+        for (int i = 0; i < POSITIONS.length; i += 1) {
+            Board board = position(POSITIONS[i]);
+            for (int d = 1; d <= depth; d += 1) {
+                long start = System.nanoTime();
+                long count = board.perft(d);
+                long elapsed = Math.max(1, System.nanoTime() - start);
+                System.out.printf("%8d %5d %14d %10d %12d%n", i, d, count,
+                                  elapsed / 1000000,
+                                  count * 1000000000L / elapsed);
+            }
+        }
+    }
+
+    /** Report the time and memory allocated per call of the basic
+     *  operations used in searching, averaged over POSITIONS, and the
+     *  speed of a search to DEPTH.  Reports an error if staticScore
+     *  takes longer than Evaluation.BUDGET_NANOS. */
+    static void ops(int depth) {
+        Board[] boards = new Board[POSITIONS.length];
+        int[][] moves = new int[POSITIONS.length][Board.MAX_MOVES];
+        int[] counts = new int[POSITIONS.length];
+        for (int i = 0; i < POSITIONS.length; i += 1) {
+            boards[i] = position(POSITIONS[i]);
+            counts[i] = boards[i].legalMoves(boards[i].turn(), moves[i], 0);
+        }
+        AI ai = new AI(1);
+
+        System.out.printf("%-16s %12s %12s%n", "operation", "ns/op",
+                          "bytes/op");
+        time("legalMoves", () -> {
+            for (int i = 0; i < boards.length; i += 1) {
+                boards[i].legalMoves(boards[i].turn(), moves[i], 0);
+            }
+            return boards.length;
+        });
+        time("makeMove/undo", () -> {
+            int n = 0;
+            for (int i = 0; i < boards.length; i += 1) {
+                for (int k = 0; k < counts[i]; k += 1) {
+                    boards[i].makeMove(moves[i][k]);
+                    boards[i].undo();
+                }
+                n += counts[i];
+            }
+            return n;
+        });
+        double scoreTime = time("staticScore", () -> {
+            for (Board board : boards) {
+                ai.staticScore(board);
+            }
+            return boards.length;
+        });
+        if (scoreTime > Evaluation.BUDGET_NANOS) {
+            System.err.printf("staticScore is over its budget of %d ns%n",
+                              Evaluation.BUDGET_NANOS);
+        }
+
+        long nodes = 0;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (Board board : boards) {
+            ai.findMove(board, depth);
+            nodes += ai.lastNodeCount();
+        }
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        allocated = allocatedBytes() - allocated;
+        System.out.printf("findMove depth %d: %d nodes/s, %d bytes/node%n",
+                          depth, nodes * 1000000000L / elapsed,
+                          allocated / Math.max(1, nodes));
+    }
+
+    /** Report the time and memory allocated to publish (see
+     *  BoardWidget.update) and paint each position of a game of random
+     *  moves of up to MOVES moves, redrawing all squares and then only
+     *  those that have changed, and the number of squares redrawn per
+     *  position in each case. */
+    static void render(int moves) {
+        System.setProperty("java.awt.headless", "true");
+        Board board = new Board();
+        Random gen = new Random(RENDER_SEED);
+        List<Board> game = new ArrayList<>();
+        game.add(new Board(board));
+        while (game.size() <= moves && board.winner() == null) {
+            List<Move> legal = board.legalMoves(board.turn());
+            if (legal.isEmpty()) {
+                break;
+            }
+            board.makeMove(legal.get(gen.nextInt(legal.size())));
+            game.add(new Board(board));
+        }
+        BufferedImage screen =
+            new BufferedImage(BoardWidget.BOARD_SIDE, BoardWidget.BOARD_SIDE,
+                              BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = screen.createGraphics();
+        BoardWidget widget = new BoardWidget(null);
+
+        System.out.printf("%-16s %12s %12s%n", "operation", "ns/op",
+                          "bytes/op");
+        for (boolean incremental : new boolean[] { false, true }) {
+            widget.setIncremental(incremental);
+            long drawn = widget.squaresDrawn();
+            int[] count = { 0 };
+            time(incremental ? "paint changed" : "paint all", () -> {
+                for (Board b : game) {
+                    widget.update(b);
+                    widget.paintComponent(g);
+                }
+                count[0] += game.size();
+                return game.size();
+            });
+            System.out.printf("%-16s %12.1f squares/op%n", "",
+                              (double) (widget.squaresDrawn() - drawn)
+                              / count[0]);
+        }
+    }
+
+    /** Choose a move in each of POSITIONS with an MCTSPlayer making
+     *  PLAYOUTS playouts, with 1, 2, 4, ... up to MAXTHREADS threads
+     *  (after a first, untimed round with one thread), reporting the
+     *  playouts per second and speedup over one thread for each thread
+     *  count, and the moves chosen. */
+    static void mcts(int playouts, int maxThreads) {
+        new MCTSPlayer(1).findMove(position(POSITIONS[0]));
+        System.out.printf("%7s %12s %10s %12s %8s  %s%n",
+                          "threads", "playouts", "ms", "playouts/s",
+                          "speedup", "moves");
+        double baseRate = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            MCTSPlayer player = new MCTSPlayer(threads);
+            player.setPlayouts(playouts);
+            long total = 0;
+            StringBuilder moves = new StringBuilder();
+            long start = System.nanoTime();
+            for (String encoded : POSITIONS) {
+                moves.append(' ').append(player.findMove(position(encoded)));
+                total += player.lastNodeCount();
+            }
+            long elapsed = Math.max(1, System.nanoTime() - start);
+            double rate = total * 1e9 / elapsed;
+            if (threads == 1) {
+                baseRate = rate;
+            }
+            System.out.printf("%7d %12d %10d %12.0f %8.2f %s%n", threads,
+                              total, elapsed / 1000000, rate,
+                              rate / baseRate, moves);
+        }
+    }
+
+    /** An operation timed by time. */
+    private interface Op {
+        /** Perform the operation some number of times and return that
+         *  number. */
+        int run();
+    }
+
+    /** Repeat OP for at least OP_TIME nanoseconds, after an equal time to
+     *  warm up, and report the time and memory allocated per operation
+     *  under the heading NAME.  Return the time per operation in
+     *  nanoseconds. */
+    private static double time(String name, Op op) {
+        for (long t0 = System.nanoTime(); System.nanoTime() - t0 < OP_TIME;) {
+            op.run();
+        }
+        long count = 0;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime(), elapsed;
+        do {
+            count += op.run();
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < OP_TIME);
+        allocated = allocatedBytes() - allocated;
+        System.out.printf("%-16s %12.1f %12d%n", name,
+                          (double) elapsed / count, allocated / count);
+        return (double) elapsed / count;
+    }
+
+    /** Return the number of bytes allocated so far by the current thread,
+     *  or 0 if the JVM does not track this. */
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+}
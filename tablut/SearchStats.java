@@ -0,0 +1,295 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measurements of one search by an AI: the positions it visited, how
+ *  well the transposition table and move ordering served it, and how
+ *  long each iteration of iterative deepening took.  Each thread taking
+ *  part in a search counts into its own SearchStats, and the counts are
+ *  added together when the search finishes, so that counting needs no
+ *  synchronization.
+ *  @author Mingyan Zou
+ */
+class SearchStats {
+
+    /** Number of move positions distinguished in the cutoff counts.
+     *  Cutoffs by moves at this position or later are counted
+     *  together. */
+    static final int CUTOFF_SLOTS = 8;
+
+    /** Count a position visited by the main search. */
+    void countNode() {
+        _nodes += 1;
+    }
+
+    /** Count a position visited by quiescence search. */
+    void countQuiescenceNode() {
+        _nodes += 1;
+        _qnodes += 1;
+    }
+
+    /** Count a probe of the transposition table, which found an entry
+     *  for the position iff HIT, and whose entry settled the position's
+     *  value iff CUTOFF. */
+    void countProbe(boolean hit, boolean cutoff) {
+        _ttProbes += 1;
+        if (hit) {
+            _ttHits += 1;
+        }
+        if (cutoff) {
+            _ttCutoffs += 1;
+        }
+    }
+
+    /** Count a beta cutoff caused by the move at position INDEX (from 0)
+     *  in the order searched. */
+    void countCutoff(int index) {
+        _cutoffs[Math.min(index, CUTOFF_SLOTS - 1)] += 1;
+    }
+
+    /** Count a null-move search that pruned a position. */
+    void countNullMoveCutoff() {
+        _nullMoveCutoffs += 1;
+    }
+
+    /** Count a move pruned by futility pruning. */
+    void countFutilityPrune() {
+        _futilityPrunes += 1;
+    }
+
+    /** Count a move searched to reduced depth, whose search had to be
+     *  repeated at full depth iff RESEARCHED. */
+    void countReduction(boolean researched) {
+        _reductions += 1;
+        if (researched) {
+            _reductionResearches += 1;
+        }
+    }
+
+    /** Add the counts in OTHER to mine. */
+    void add(SearchStats other) {
+        _nodes += other._nodes;
+        _qnodes += other._qnodes;
+        _ttProbes += other._ttProbes;
+        _ttHits += other._ttHits;
+        _ttCutoffs += other._ttCutoffs;
+        _nullMoveCutoffs += other._nullMoveCutoffs;
+        _futilityPrunes += other._futilityPrunes;
+        _reductions += other._reductions;
+        _reductionResearches += other._reductionResearches;
+        for (int i = 0; i < CUTOFF_SLOTS; i += 1) {
+            _cutoffs[i] += other._cutoffs[i];
+        }
+    }
+
+    /** Record the end of an iteration that searched to DEPTH plies,
+     *  found MOVE with value SCORE (from the point of view of the side
+     *  to move), and ended ELAPSED nanoseconds after the search
+     *  started. */
+    void endIteration(int depth, int score, Move move, long elapsed) {
+        long nodes = _nodes, time = elapsed;
+        for (Iteration it : _iterations) {
+            nodes -= it._nodes;
+            time -= it._time;
+        }
+        _iterations.add(new Iteration(depth, nodes, time, score, move));
+        _time = elapsed;
+    }
+
+    /** Return the total number of positions visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of positions visited by quiescence search. */
+    long quiescenceNodes() {
+        return _qnodes;
+    }
+
+    /** Return the number of probes of the transposition table. */
+    long ttProbes() {
+        return _ttProbes;
+    }
+
+    /** Return the number of probes that found an entry. */
+    long ttHits() {
+        return _ttHits;
+    }
+
+    /** Return the number of probes whose entry settled the position's
+     *  value without searching it. */
+    long ttCutoffs() {
+        return _ttCutoffs;
+    }
+
+    /** Return the number of positions pruned by null-move searches. */
+    long nullMoveCutoffs() {
+        return _nullMoveCutoffs;
+    }
+
+    /** Return the number of moves pruned by futility pruning. */
+    long futilityPrunes() {
+        return _futilityPrunes;
+    }
+
+    /** Return the number of moves searched to reduced depth. */
+    long reductions() {
+        return _reductions;
+    }
+
+    /** Return the number of reduced searches repeated at full depth. */
+    long reductionResearches() {
+        return _reductionResearches;
+    }
+
+    /** Return the number of beta cutoffs caused by the move at position
+     *  INDEX (from 0) in the order searched, or by any move at INDEX or
+     *  later if INDEX is CUTOFF_SLOTS - 1. */
+    long cutoffs(int index) {
+        return _cutoffs[index];
+    }
+
+    /** Return the depth of the last iteration completed, or 0 if
+     *  none. */
+    int depth() {
+        return _iterations.isEmpty() ? 0
+            : _iterations.get(_iterations.size() - 1)._depth;
+    }
+
+    /** Return the value of the move found by the last iteration
+     *  completed, from the point of view of the side to move, or 0 if
+     *  none. */
+    int score() {
+        return _iterations.isEmpty() ? 0
+            : _iterations.get(_iterations.size() - 1)._score;
+    }
+
+    /** Return the time taken by the iterations completed, in
+     *  nanoseconds. */
+    long time() {
+        return _time;
+    }
+
+    /** Return the effective branching factor: the ratio of the positions
+     *  visited by the last iteration to those visited by the one before
+     *  or, if there was only one iteration, the DEPTH-th root of the
+     *  positions it visited. */
+    double branchingFactor() {
+        int n = _iterations.size();
+        if (n == 0) {
+            return 0;
+        } else if (n == 1) {
+            return Math.pow(_nodes, 1.0 / Math.max(1, depth()));
+        } else {
+            return (double) _iterations.get(n - 1)._nodes
+                / Math.max(1, _iterations.get(n - 2)._nodes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("depth %d: %d nodes (%d quiescence) in"
+                                 + " %d ms, %d nodes/s, branching %.2f%n",
+                                 depth(), _nodes, _qnodes, _time / 1000000,
+                                 _nodes * 1000000000L / Math.max(1, _time),
+                                 branchingFactor()));
+        out.append(String.format("table: %d probes, %d hits, %d cutoffs%n",
+                                 _ttProbes, _ttHits, _ttCutoffs));
+        out.append(String.format("pruning: %d null-move cutoffs, %d futile"
+                                 + " moves, %d reductions (%d repeated)%n",
+                                 _nullMoveCutoffs, _futilityPrunes,
+                                 _reductions, _reductionResearches));
+        long total = 0;
+        for (long c : _cutoffs) {
+            total += c;
+        }
+        out.append(String.format("cutoffs: %d, by move", total));
+        for (int i = 0; i < CUTOFF_SLOTS; i += 1) {
+            out.append(String.format(" %d%s %.1f%%", i + 1,
+                                     i == CUTOFF_SLOTS - 1 ? "+" : ":",
+                                     100.0 * _cutoffs[i] / Math.max(1, total)));
+        }
+        out.append(String.format("%n"));
+        for (Iteration it : _iterations) {
+            out.append(String.format("  depth %d: %s (%d) %d nodes,"
+                                     + " %d ms%n", it._depth, it._move,
+                                     it._score, it._nodes,
+                                     it._time / 1000000));
+        }
+        return out.toString();
+    }
+
+    /** Return my measurements as a JSON object on one line. */
+    String toJSON() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("{\"depth\": %d, \"nodes\": %d,"
+                                 + " \"qnodes\": %d, \"ms\": %.1f,"
+                                 + " \"ebf\": %.3f, \"tt_probes\": %d,"
+                                 + " \"tt_hits\": %d, \"tt_cutoffs\": %d,"
+                                 + " \"null_cutoffs\": %d, \"futile\": %d,"
+                                 + " \"reductions\": %d, \"researches\": %d,"
+                                 + " \"cutoffs\": [",
+                                 depth(), _nodes, _qnodes, _time / 1e6,
+                                 branchingFactor(), _ttProbes, _ttHits,
+                                 _ttCutoffs, _nullMoveCutoffs,
+                                 _futilityPrunes, _reductions,
+                                 _reductionResearches));
+        for (int i = 0; i < CUTOFF_SLOTS; i += 1) {
+            out.append(i == 0 ? "" : ", ").append(_cutoffs[i]);
+        }
+        out.append("], \"iterations\": [");
+        for (int i = 0; i < _iterations.size(); i += 1) {
+            Iteration it = _iterations.get(i);
+            out.append(String.format("%s{\"depth\": %d, \"move\": \"%s\","
+                                     + " \"score\": %d, \"nodes\": %d,"
+                                     + " \"ms\": %.1f}",
+                                     i == 0 ? "" : ", ", it._depth, it._move,
+                                     it._score, it._nodes, it._time / 1e6));
+        }
+        out.append("]}");
+        return out.toString();
+    }
+
+    /** The results of one iteration of iterative deepening. */
+    private static class Iteration {
+        /** An iteration to DEPTH plies that visited NODES positions in
+         *  TIME nanoseconds and found MOVE, with value SCORE. */
+        Iteration(int depth, long nodes, long time, int score, Move move) {
+            _depth = depth;
+            _nodes = nodes;
+            _time = time;
+            _score = score;
+            _move = move;
+        }
+
+        /** Depth searched. */
+        private final int _depth;
+        /** Positions visited and nanoseconds taken by this iteration
+         *  alone. */
+        private final long _nodes, _time;
+        /** Value of the best move. */
+        private final int _score;
+        /** The best move. */
+        private final Move _move;
+    }
+
+    /** Positions visited in all, and by quiescence search. */
+    private long _nodes, _qnodes;
+    /** Transposition-table probes, those that found an entry, and those
+     *  whose entry settled the position's value. */
+    private long _ttProbes, _ttHits, _ttCutoffs;
+    /** Positions pruned by null-move searches, moves pruned as futile,
+     *  moves searched to reduced depth, and those searched again. */
+    private long _nullMoveCutoffs, _futilityPrunes, _reductions,
+        _reductionResearches;
+    /** _cutoffs[i] is the number of beta cutoffs by the move at position
+     *  i in the order searched (see countCutoff). */
+    private final long[] _cutoffs = new long[CUTOFF_SLOTS];
+    /** The iterations completed, in order. */
+    private final List<Iteration> _iterations = new ArrayList<>();
+    /** Nanoseconds taken by the iterations completed. */
+    private long _time;
+
+}
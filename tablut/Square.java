@@ -7,9 +7,9 @@ import java.util.List;
 
 import static tablut.Utils.*;
 
-/** Represents a position on a Tablut board.  Positions are numbered
- *  from 0 (lower-left corner) to BOARD_SIZE * BOARD_SIZE - 1
- *  (upper-right corner).
+/** Represents a position on the board of the current Variant.
+ *  Positions are numbered from 0 (lower-left corner) to
+ *  BOARD_SIZE * BOARD_SIZE - 1 (upper-right corner).
  *  Squares are immutable and unique: there is precisely one square created for
  *  each distinct position.  Clients create squares using the factory method
  *  sq, not the constructor.  Because there is a unique Square object for each
@@ -21,17 +21,31 @@ import static tablut.Utils.*;
 final class Square {
 
     /** The total number of possible rows or columns. */
-    static final int BOARD_SIZE = 9;
+    static final int BOARD_SIZE = Variant.current().size();
 
     /** The total number of possible squares. */
     static final int NUM_SQUARES = BOARD_SIZE * BOARD_SIZE;
 
+    /** Number of bits needed to hold the index of a square. */
+    static final int INDEX_BITS =
+        Integer.SIZE - Integer.numberOfLeadingZeros(NUM_SQUARES - 1);
+
+    /** Number of longs in a bitboard of all squares (see RAY_MASKS). */
+    static final int BITBOARD_WORDS = (NUM_SQUARES + Long.SIZE - 1) / Long.SIZE;
+
+    /** The regular expression for a column letter. */
+    static final String COL = String.format("[a-%c]", 'a' + BOARD_SIZE - 1);
+
+    /** The regular expression for a row number. */
+    static final String ROW = BOARD_SIZE < 10 ? "[1-" + BOARD_SIZE + "]"
+        : String.format("(?:1[0-%d]|[1-9])", BOARD_SIZE - 10);
+
     /** The regular expression for a square designation (e.g.,
      *  a3). For convenience, it is in parentheses to make it a
      *  group.  This subpattern is intended to be incorporated into
      *  other pattern that contain square designations (such as
      *  patterns for moves). */
-    static final String SQ = "([a-i][1-9])";
+    static final String SQ = "(" + COL + ROW + ")";
 
     /** Return my row position, where 0 is the bottom row. */
     int row() {
@@ -43,8 +57,8 @@ final class Square {
         return _col;
     }
 
-    /** Return my index position (0-80).  0 represents square a1, and 80
-     *  is square i9. */
+    /** Return my index position (0 to NUM_SQUARES - 1).  0 represents
+     *  square a1, and 80 is square i9 on the 9x9 board. */
     int index() {
         return _index;
     }
@@ -60,6 +74,12 @@ final class Square {
                 || _row == BOARD_SIZE - 1 || _col == BOARD_SIZE - 1);
     }
 
+    /** Return true iff I am a corner of the board. */
+    boolean isCorner() {
+        return (_row == 0 || _row == BOARD_SIZE - 1)
+            && (_col == 0 || _col == BOARD_SIZE - 1);
+    }
+
     /** Definitions of direction for rookMove.  DIR[k] = (dcol, drow)
      *  means that to going one step from (col, row) in direction k,
      *  brings us to (col + dcol, row + drow). */
@@ -122,11 +142,51 @@ final class Square {
         return Math.abs(_col - other._col) + Math.abs(_row - other._row) == 1;
     }
 
+    /** Return the number of steps along rows, columns, and diagonals
+     *  from me to OTHER. */
+    int distance(Square other) {
+        return Math.max(Math.abs(_col - other._col),
+                        Math.abs(_row - other._row));
+    }
+
     @Override
     public String toString() {
         return _str;
     }
 
+    /** Return true iff C is a column letter in a square designation (see
+     *  SQ). */
+    static boolean isColumn(char c) {
+        return c >= 'a' && c < 'a' + BOARD_SIZE;
+    }
+
+    /** Return the row (0 being the bottom) whose number (see ROW) is
+     *  formed by the characters of STR from START up to END, or -1 if
+     *  they do not form a row number.  Like isColumn and parse, this
+     *  examines the characters directly, without a Pattern. */
+    static int parseRow(String str, int start, int end) {
+        int row;
+        if (end - start == 1) {
+            row = str.charAt(start) - '1';
+        } else if (end - start == 2 && str.charAt(start) == '1') {
+            char c = str.charAt(start + 1);
+            row = c >= '0' && c <= '9' ? c - '0' + 9 : -1;
+        } else {
+            return -1;
+        }
+        return row >= 0 && row < BOARD_SIZE ? row : -1;
+    }
+
+    /** Return the Square designated by the characters of STR from START
+     *  up to END (see SQ), or null if they do not designate a square. */
+    static Square parse(String str, int start, int end) {
+        if (end <= start || !isColumn(str.charAt(start))) {
+            return null;
+        }
+        int row = parseRow(str, start + 1, end);
+        return row < 0 ? null : sq(str.charAt(start) - 'a', row);
+    }
+
     /** Return true iff COL ROW is a legal square. */
     static boolean exists(int col, int row) {
         return row >= 0 && col >= 0 && row < BOARD_SIZE && col < BOARD_SIZE;
@@ -149,18 +209,19 @@ final class Square {
     /** Return the (unique) Square denoting the position COL ROW, where
      *  COL ROW is the standard text format for a square (e.g., a4). */
     static Square sq(String col, String row) {
-        if (col.length() != 1 || row.length() != 1) {
+        if (col.length() != 1 || parseRow(row, 0, row.length()) < 0) {
             throw error("bad row or column");
         }
-        return sq(col.charAt(0) - 'a', row.charAt(0) - '1');
+        return sq(col.charAt(0) - 'a', parseRow(row, 0, row.length()));
     }
 
     /** Return the (unique) Square denoting the position in POSN, in the
      *  standard text format for a square (e.g. a4). POSN must be a
      *  valid square designation. */
     static Square sq(String posn) {
-        assert posn.matches(SQ);
-        return sq(posn.charAt(0) - 'a', posn.charAt(1) - '1');
+        Square result = parse(posn, 0, posn.length());
+        assert result != null;
+        return result;
     }
 
     /** Return the Square with index INDEX. */
@@ -232,6 +293,85 @@ final class Square {
         }
     }
 
+    /** RAY_MASKS[i][d] is the set of squares in ROOK_SQUARES[i][d] as a
+     *  bitboard: the square with index k is in the set iff bit k % 64 of
+     *  RAY_MASKS[i][d][k / 64] is 1. */
+    static final long[][][] RAY_MASKS =
+        new long[NUM_SQUARES][4][BITBOARD_WORDS];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < DIR.length; d += 1) {
+                for (Square sq : ROOK_SQUARES[i][d]) {
+                    RAY_MASKS[i][d][sq.index() / Long.SIZE] |=
+                        1L << sq.index();
+                }
+            }
+        }
+    }
+
+    /** NEIGHBORS[i][d] is the index of the square one step in direction d
+     *  (as for rookMove) from the square with index i, or -1 if there is
+     *  none.  CAPTURE_PARTNERS[i][d] is the index of the square two steps
+     *  away, or -1: a piece that moves to square i captures the piece on
+     *  NEIGHBORS[i][d] if the square CAPTURE_PARTNERS[i][d] is hostile to
+     *  it. */
+    static final int[][]
+        NEIGHBORS = new int[NUM_SQUARES][4],
+        CAPTURE_PARTNERS = new int[NUM_SQUARES][4];
+
+    static {
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            for (int d = 0; d < DIR.length; d += 1) {
+                SqList ray = ROOK_SQUARES[i][d];
+                NEIGHBORS[i][d] = ray.size() > 0 ? ray.get(0).index() : -1;
+                CAPTURE_PARTNERS[i][d] =
+                    ray.size() > 1 ? ray.get(1).index() : -1;
+            }
+        }
+    }
+
+    /** Number of symmetries of the board: the rotations by multiples of
+     *  90 degrees and the reflections about the middle row, middle column,
+     *  and diagonals.  The rules and the initial position are unchanged by
+     *  all of them. */
+    static final int SYMMETRIES = 8;
+
+    /** SYMMETRY[t][i] is the index of the square to which symmetry t
+     *  carries the square with index i.  Symmetry t reflects columns iff
+     *  bit 0 of t is 1, reflects rows iff bit 1 is 1, and then exchanges
+     *  rows and columns iff bit 2 is 1, so that symmetry 0 is the
+     *  identity.  INVERSE_SYMMETRY[t] is the symmetry that undoes
+     *  symmetry t. */
+    static final int[][] SYMMETRY = new int[SYMMETRIES][NUM_SQUARES];
+
+    /** See SYMMETRY. */
+    static final int[] INVERSE_SYMMETRY = new int[SYMMETRIES];
+
+    static {
+        for (int t = 0; t < SYMMETRIES; t += 1) {
+            for (int i = 0; i < NUM_SQUARES; i += 1) {
+                int c = i % BOARD_SIZE, r = i / BOARD_SIZE;
+                if ((t & 1) != 0) {
+                    c = BOARD_SIZE - 1 - c;
+                }
+                if ((t & 2) != 0) {
+                    r = BOARD_SIZE - 1 - r;
+                }
+                SYMMETRY[t][i] = (t & 4) != 0 ? c * BOARD_SIZE + r
+                    : r * BOARD_SIZE + c;
+            }
+        }
+        for (int t = 0; t < SYMMETRIES; t += 1) {
+            for (int u = 0; u < SYMMETRIES; u += 1) {
+                if (SYMMETRY[u][SYMMETRY[t][1]] == 1
+                    && SYMMETRY[u][SYMMETRY[t][BOARD_SIZE]] == BOARD_SIZE) {
+                    INVERSE_SYMMETRY[t] = u;
+                }
+            }
+        }
+    }
+
     /** My index position. */
     private final int _index;
 
@@ -0,0 +1,686 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Square.*;
+
+/** An endgame tablebase: the game-theoretic value, with perfect play, of
+ *  every position having the king, a fixed number of white pieces, and a
+ *  fixed number of black pieces.  Values are WIN, LOSS, or DRAW for the
+ *  side to move, together with the number of plies to the end of the
+ *  game (for wins and losses).  Repetitions and move limits are ignored,
+ *  and a side with no legal moves loses.
+ *
+ *  Positions are numbered by a perfect hash (see index).  A table is
+ *  stored in a file holding a header (MAGIC, the numbers of white and
+ *  black pieces, and the largest distance), then the values packed
+ *  four to a byte, then one distance byte per position.  Tables are
+ *  mapped into memory when loaded.  The tables for up to N pieces
+ *  (counting the king) may be built into directory DIR with
+ *      java -cp .. tablut.Tablebase DIR [N]
+ *  @author Mingyan Zou
+ */
+class Tablebase {
+
+    /** Values of positions, from the point of view of the side to
+     *  move. */
+    static final int UNKNOWN = 0, WIN = 1, LOSS = 2, DRAW = 3;
+
+    /** Largest number of white and of black pieces (not counting the
+     *  king) in any table. */
+    static final int MAX_PIECES = 3;
+
+    /** Identifies a tablebase file. */
+    static final int MAGIC = 0x54425431;
+
+    /** Size of a file header in bytes. */
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+    /** Largest file that can be mapped into memory (see map), which
+     *  limits the size of tables (see fits). */
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+    /** Largest recorded distance. Positions not resolved within this
+     *  many plies are recorded as draws. */
+    private static final int MAX_DISTANCE = 255;
+
+    /** Default number of pieces (counting the king) for which to build
+     *  tables. */
+    private static final int DEFAULT_PIECES = 3;
+
+    /** Bits per packed value. */
+    private static final int VALUE_BITS = 2;
+
+    /** Values per byte of packed values. */
+    private static final int VALUES_PER_BYTE = Byte.SIZE / VALUE_BITS;
+
+    /** Mask for one packed value. */
+    private static final int VALUE_MASK = (1 << VALUE_BITS) - 1;
+
+    /** Mask for an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+
+    /** The table for positions with WHITES white pieces and BLACKS black
+     *  pieces, read from the file named FILENAME.  Throws IOException if
+     *  the file cannot be read or does not hold that table. */
+    Tablebase(String fileName, int whites, int blacks) throws IOException {
+        this(whites, blacks, map(fileName));
+        if (_data.getInt(0) != MAGIC || _data.getInt(Integer.BYTES) != whites
+            || _data.getInt(2 * Integer.BYTES) != blacks
+            || _data.capacity() != HEADER_SIZE + packedSize() + _size) {
+            throw new IOException(fileName + " is not a " + whites + "-"
+                                  + blacks + " tablebase");
+        }
+    }
+
+    /** The table for positions with WHITES white pieces and BLACKS black
+     *  pieces, whose header and contents are in DATA. */
+    private Tablebase(int whites, int blacks, ByteBuffer data) {
+        _whites = whites;
+        _blacks = blacks;
+        assert fits(whites, blacks);
+        _size = (int) size(whites, blacks);
+        _data = data;
+        _maxDistance = data.getInt(3 * Integer.BYTES);
+    }
+
+    /** Return the number of white pieces (not counting the king) in my
+     *  positions. */
+    int whites() {
+        return _whites;
+    }
+
+    /** Return the number of black pieces in my positions. */
+    int blacks() {
+        return _blacks;
+    }
+
+    /** Return the value (WIN, LOSS, or DRAW) for the side to move of the
+     *  position numbered INDEX. */
+    int value(int index) {
+        int b = _data.get(HEADER_SIZE + index / VALUES_PER_BYTE);
+        return (b >> (VALUE_BITS * (index % VALUES_PER_BYTE))) & VALUE_MASK;
+    }
+
+    /** Return the number of plies to the end of the game from the position
+     *  numbered INDEX, assuming it is not a draw. */
+    int distance(int index) {
+        return _data.get(HEADER_SIZE + packedSize() + index) & BYTE_MASK;
+    }
+
+    /** Return the index in my table of the position on BOARD, which must
+     *  have the king, whites() white pieces, and blacks() black
+     *  pieces. */
+    int index(Board board) {
+        return index(board, new int[_whites], new int[_blacks]);
+    }
+
+    /** Return index(BOARD), using WHITESQS and BLACKSQS, of lengths
+     *  whites() and blacks(), to hold the squares of the white and black
+     *  pieces, so that nothing is allocated. */
+    int index(Board board, int[] whiteSqs, int[] blackSqs) {
+        board.squaresOf(WHITE, whiteSqs);
+        board.squaresOf(BLACK, blackSqs);
+        return index(board.turn(), board.kingPosition().index(), whiteSqs,
+                     blackSqs);
+    }
+
+    /** Return the index of the position with TURN to move, the king on
+     *  the square indexed KING, and white and black pieces on the squares
+     *  indexed by the increasing sequences WHITESQS and BLACKSQS.  The
+     *  index is TURN (0 for white, 1 for black), KING, the rank of the
+     *  white squares among the NUM_SQUARES - 1 squares other than KING,
+     *  and the rank of the black squares among the remaining squares,
+     *  combined as digits of a mixed-radix number. */
+    static int index(Piece turn, int king, int[] whiteSqs, int[] blackSqs) {
+        int whites = whiteSqs.length, blacks = blackSqs.length;
+        int rankW = 0, rankB = 0;
+        for (int k = 0; k < whites; k += 1) {
+            int s = whiteSqs[k];
+            rankW += BINOM[s - (s > king ? 1 : 0)][k + 1];
+        }
+        for (int k = 0; k < blacks; k += 1) {
+            int s = blackSqs[k], below = s > king ? 1 : 0;
+            for (int w : whiteSqs) {
+                below += w < s ? 1 : 0;
+            }
+            rankB += BINOM[s - below][k + 1];
+        }
+        int stm = turn == WHITE ? 0 : 1;
+        return ((stm * NUM_SQUARES + king) * BINOM[NUM_SQUARES - 1][whites]
+                + rankW) * BINOM[NUM_SQUARES - 1 - whites][blacks] + rankB;
+    }
+
+    /** Return the number of positions with WHITES white and BLACKS black
+     *  pieces (including impossible ones). */
+    static long size(int whites, int blacks) {
+        return 2L * NUM_SQUARES * BINOM[NUM_SQUARES - 1][whites]
+            * BINOM[NUM_SQUARES - 1 - whites][blacks];
+    }
+
+    /** Return true iff the table for WHITES white and BLACKS black pieces
+     *  is small enough to build and load: its file, of HEADER_SIZE bytes
+     *  plus one and a quarter per position, is at most MAX_FILE_SIZE
+     *  bytes. */
+    static boolean fits(int whites, int blacks) {
+        long size = size(whites, blacks);
+        return HEADER_SIZE + (size + VALUES_PER_BYTE - 1) / VALUES_PER_BYTE
+            + size <= MAX_FILE_SIZE;
+    }
+
+    /** Return the largest number of pieces, counting the king, for which
+     *  main can build all the tables. */
+    static int maxPieces() {
+        for (int n = 0; n <= 2 * MAX_PIECES; n += 1) {
+            for (int w = 0; w <= Math.min(n, MAX_PIECES); w += 1) {
+                if (n - w <= MAX_PIECES && !fits(w, n - w)) {
+                    return n;
+                }
+            }
+        }
+        return 2 * MAX_PIECES + 1;
+    }
+
+    /** Load all the tables in directory DIR, returning them in an array
+     *  indexed by numbers of white and black pieces.  Tables that are
+     *  not present are null. */
+    static Tablebase[][] load(String dir) throws IOException {
+        Tablebase[][] tables = new Tablebase[MAX_PIECES + 1][MAX_PIECES + 1];
+        for (int w = 0; w <= MAX_PIECES; w += 1) {
+            for (int b = 0; b <= MAX_PIECES; b += 1) {
+                File file = new File(dir, fileName(w, b));
+                if (fits(w, b) && file.exists()) {
+                    tables[w][b] = new Tablebase(file.getPath(), w, b);
+                }
+            }
+        }
+        return tables;
+    }
+
+    /** Return the name of the file holding the table for WHITES white and
+     *  BLACKS black pieces in the current Variant. */
+    static String fileName(int whites, int blacks) {
+        return String.format("%s-%d-%d.tb", Board.VARIANT.name(), whites,
+                             blacks);
+    }
+
+    /** Build the tables for up to ARGS[1] (default DEFAULT_PIECES) pieces,
+     *  including the king, into directory ARGS[0]. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java tablut.Tablebase DIR [PIECES]");
+            System.exit(1);
+        }
+        int pieces =
+            args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PIECES;
+        if (pieces > maxPieces()) {
+            System.err.printf("Tables for more than %d pieces are too large"
+                              + " for %s%n", maxPieces(),
+                              Board.VARIANT.name());
+            System.exit(1);
+        }
+        Tablebase[][] tables =
+            new Tablebase[MAX_PIECES + 1][MAX_PIECES + 1];
+        for (int n = 0; n < pieces; n += 1) {
+            for (int w = 0; w <= Math.min(n, MAX_PIECES); w += 1) {
+                int b = n - w;
+                if (b > MAX_PIECES) {
+                    continue;
+                }
+                long start = System.currentTimeMillis();
+                String name = new File(args[0], fileName(w, b)).getPath();
+                new Generator(w, b, tables).run().write(name);
+                tables[w][b] = new Tablebase(name, w, b);
+                System.err.printf("%s: %d positions, %d s%n", name,
+                                  size(w, b),
+                                  (System.currentTimeMillis() - start)
+                                  / 1000);
+            }
+        }
+    }
+
+    /** Return the contents of the file named FILENAME, mapped into
+     *  memory. */
+    private static ByteBuffer map(String fileName) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "r");
+             FileChannel channel = file.getChannel()) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+    }
+
+    /** Return the number of bytes of packed values. */
+    private int packedSize() {
+        return (_size + VALUES_PER_BYTE - 1) / VALUES_PER_BYTE;
+    }
+
+    /** Computes the table for one combination of pieces by repeatedly
+     *  sweeping over its positions.  Sweep number r resolves exactly the
+     *  positions that are won or lost in r plies, using the tables for
+     *  fewer pieces for moves that capture.  Only the first sweep visits
+     *  every position.  After it, a position can be resolved only if one
+     *  of its successors in the table was resolved by the sweep before,
+     *  or if it has a move that captures or wins (an exit) and r is at
+     *  most one more than the distances in the smaller tables.  Later
+     *  sweeps visit only those positions, finding the predecessors of
+     *  the positions resolved by the last sweep by moving pieces
+     *  backwards. */
+    private static class Generator {
+
+        /** A Generator for the table with WHITES white and BLACKS black
+         *  pieces, using the smaller tables in TABLES. */
+        Generator(int whites, int blacks, Tablebase[][] tables) {
+            _whites = whites;
+            _blacks = blacks;
+            _tables = tables;
+            _whiteSqs = new int[whites];
+            _blackSqs = new int[blacks];
+            _taken = new int[1 + whites];
+            _placed = new int[1 + whites + blacks];
+            _board.setPosition("W" + "-".repeat(NUM_SQUARES));
+            _predWhites = new int[whites];
+            _predBlacks = new int[blacks];
+            assert fits(whites, blacks);
+            _values = new byte[(int) size(whites, blacks)];
+            _distances = new byte[_values.length];
+            _marked = new long[(_values.length + Long.SIZE - 1) / Long.SIZE];
+            _nextMarked = new long[_marked.length];
+            _exits = new long[_marked.length];
+            for (int w = 0; w <= whites; w += 1) {
+                for (int b = 0; b <= blacks; b += 1) {
+                    if ((w < whites || b < blacks) && tables[w][b] != null) {
+                        _subtableDistance = Math.max(_subtableDistance,
+                                                     tables[w][b]
+                                                     ._maxDistance);
+                    }
+                }
+            }
+        }
+
+        /** Compute the table and return me. */
+        Generator run() {
+            for (int r = 0; r <= MAX_DISTANCE; r += 1) {
+                boolean changed = false,
+                    exits = r <= _subtableDistance + 1;
+                if (r == 0) {
+                    for (int i = 0; i < _values.length; i += 1) {
+                        changed |= visit(i, r);
+                    }
+                } else {
+                    for (int w = 0; w < _marked.length; w += 1) {
+                        for (long bits = _marked[w] | (exits ? _exits[w] : 0);
+                             bits != 0; bits &= bits - 1) {
+                            changed |= visit(w * Long.SIZE
+                                             + Long.numberOfTrailingZeros(
+                                                 bits), r);
+                        }
+                    }
+                }
+                long[] marked = _marked;
+                _marked = _nextMarked;
+                _nextMarked = marked;
+                Arrays.fill(_nextMarked, 0);
+                if (!changed && r > _subtableDistance) {
+                    break;
+                }
+            }
+            for (int i = 0; i < _values.length; i += 1) {
+                if (_values[i] == UNKNOWN) {
+                    _values[i] = DRAW;
+                }
+            }
+            return this;
+        }
+
+        /** Write the table to the file named FILENAME. */
+        void write(String fileName) throws IOException {
+            try (DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(
+                     new FileOutputStream(fileName)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(_whites);
+                out.writeInt(_blacks);
+                out.writeInt(_maxDistance);
+                for (int i = 0; i < _values.length; i += VALUES_PER_BYTE) {
+                    int b = 0;
+                    for (int k = 0; k < VALUES_PER_BYTE
+                             && i + k < _values.length; k += 1) {
+                        b |= _values[i + k] << (VALUE_BITS * k);
+                    }
+                    out.writeByte(b);
+                }
+                out.write(_distances);
+            }
+        }
+
+        /** Try to resolve position number INDEX, if it is unresolved, as
+         *  for resolve(INDEX, R), marking the predecessors of INDEX for
+         *  the next sweep if it is resolved as a win or loss.  Return true
+         *  iff INDEX is resolved. */
+        private boolean visit(int index, int r) {
+            if (_values[index] != UNKNOWN || !resolve(index, r)) {
+                return false;
+            }
+            if (_values[index] != DRAW) {
+                markPredecessors();
+            }
+            return true;
+        }
+
+        /** Mark for the next sweep every position of my table from which
+         *  a move without capture by the side not to move leads to the
+         *  position set up on _board (see setUp).  Some marked positions
+         *  may not be legal predecessors, which does no harm. */
+        private void markPredecessors() {
+            Piece mover = _board.turn().opponent();
+            if (mover == WHITE) {
+                markPredecessors(_king, mover);
+                for (int s : _whiteSqs) {
+                    markPredecessors(s, mover);
+                }
+            } else {
+                for (int s : _blackSqs) {
+                    markPredecessors(s, mover);
+                }
+            }
+        }
+
+        /** Mark for the next sweep the positions in which MOVER, to move,
+         *  has the piece on the square indexed TO on _board on an empty
+         *  square from which it moves to TO, and is otherwise as on
+         *  _board. */
+        private void markPredecessors(int to, Piece mover) {
+            for (int d = 0; d < 4; d += 1) {
+                for (Square from : ROOK_SQUARES[to][d]) {
+                    if (_board.get(from) != EMPTY) {
+                        break;
+                    }
+                    int pred = predecessorIndex(from.index(), to, mover);
+                    _nextMarked[pred / Long.SIZE] |= 1L << pred;
+                }
+            }
+        }
+
+        /** Return the index of the position with MOVER to move that is as
+         *  on _board, except that the piece on the square indexed TO is on
+         *  that indexed FROM. */
+        private int predecessorIndex(int from, int to, Piece mover) {
+            int king = _king == to ? from : _king;
+            moved(_whiteSqs, _predWhites, from, to);
+            moved(_blackSqs, _predBlacks, from, to);
+            return index(mover, king, _predWhites, _predBlacks);
+        }
+
+        /** Set RESULT to the increasing sequence of the squares in SQS,
+         *  an increasing sequence of the same length, with TO (if
+         *  present) replaced by FROM. */
+        private static void moved(int[] sqs, int[] result, int from,
+                                  int to) {
+            int n = 0;
+            for (int s : sqs) {
+                if (s != to) {
+                    result[n++] = s;
+                }
+            }
+            if (n < sqs.length) {
+                int k = n;
+                for (; k > 0 && result[k - 1] > from; k -= 1) {
+                    result[k] = result[k - 1];
+                }
+                result[k] = from;
+            }
+        }
+
+        /** Try to resolve position number INDEX as a win or loss in
+         *  exactly R plies, using only positions resolved in fewer plies.
+         *  Impossible positions are resolved as draws.  Return true iff
+         *  INDEX is resolved. */
+        private boolean resolve(int index, int r) {
+            if (!setUp(index)) {
+                _values[index] = DRAW;
+                return true;
+            }
+            Square king = _board.kingPosition();
+            if (Board.isEscape(king)) {
+                return r == 0 && set(index, _board.turn() == WHITE ? WIN
+                                     : LOSS, 0);
+            }
+            int n = _board.legalMoves(_board.turn(), _moves, 0);
+            boolean allWin = true;
+            for (int k = 0; k < n; k += 1) {
+                _board.makeMove(_moves[k]);
+                int value, dist;
+                int whites = _board.pieceCount(WHITE),
+                    blacks = _board.pieceCount(BLACK);
+                boolean exit = _board.winner() != null
+                    || whites != _whites || blacks != _blacks;
+                if (r == 0 && exit) {
+                    _exits[index / Long.SIZE] |= 1L << index;
+                }
+                if (_board.winner() != null) {
+                    value = LOSS;
+                    dist = 0;
+                } else {
+                    Tablebase sub = _tables[whites][blacks];
+                    int succ = successorIndex(_moves[k]);
+                    if (!exit) {
+                        value = _values[succ];
+                        dist = _distances[succ] & BYTE_MASK;
+                        if (value != UNKNOWN && dist >= r) {
+                            value = UNKNOWN;
+                        }
+                    } else if (sub == null) {
+                        value = UNKNOWN;
+                        dist = 0;
+                    } else {
+                        value = sub.value(succ);
+                        dist = sub.distance(succ);
+                    }
+                }
+                _board.undo();
+                if (value == LOSS && dist + 1 == r) {
+                    return set(index, WIN, r);
+                } else if (value != WIN || dist >= r) {
+                    allWin = false;
+                }
+            }
+            return allWin && (n > 0 || r == 0) && set(index, LOSS, r);
+        }
+
+        /** Record VALUE and DISTANCE for position number INDEX, and return
+         *  true. */
+        private boolean set(int index, int value, int distance) {
+            _values[index] = (byte) value;
+            _distances[index] = (byte) distance;
+            _maxDistance = Math.max(_maxDistance, distance);
+            return true;
+        }
+
+        /** Set _board, _king, _whiteSqs, and _blackSqs to the position
+         *  numbered INDEX.  Return false if it is not a possible
+         *  position.  Only the squares of the pieces of the last position
+         *  set up and of this one are changed on _board, which must have
+         *  no moves to undo. */
+        private boolean setUp(int index) {
+            int perWhite = BINOM[NUM_SQUARES - 1 - _whites][_blacks];
+            int perKing = BINOM[NUM_SQUARES - 1][_whites] * perWhite;
+            int rankB = index % perWhite;
+            int rankW = (index / perWhite) % BINOM[NUM_SQUARES - 1][_whites];
+            _king = (index / perKing) % NUM_SQUARES;
+            Piece turn = index / perKing / NUM_SQUARES == 0 ? WHITE : BLACK;
+
+            _taken[0] = _king;
+            unrank(rankW, _whiteSqs, _taken, 1);
+            if (restricted(_whiteSqs)) {
+                return false;
+            }
+            int n = 1;
+            for (int w : _whiteSqs) {
+                int k = n;
+                for (; k > 0 && _taken[k - 1] > w; k -= 1) {
+                    _taken[k] = _taken[k - 1];
+                }
+                _taken[k] = w;
+                n += 1;
+            }
+            unrank(rankB, _blackSqs, _taken, n);
+            if (restricted(_blackSqs)) {
+                return false;
+            }
+
+            for (int k = 0; k < _numPlaced; k += 1) {
+                _board.put(EMPTY, sq(_placed[k]));
+            }
+            _numPlaced = 0;
+            place(KING, _king);
+            for (int s : _whiteSqs) {
+                place(WHITE, s);
+            }
+            for (int s : _blackSqs) {
+                place(BLACK, s);
+            }
+            _board.setTurn(turn);
+            return true;
+        }
+
+        /** Return true iff any of the squares indexed by SQS is
+         *  restricted. */
+        private boolean restricted(int[] sqs) {
+            for (int s : sqs) {
+                if (Board.isRestricted(s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Put P on the square indexed S of _board, recording S among the
+         *  squares to clear for the next position. */
+        private void place(Piece p, int s) {
+            _board.put(p, sq(s));
+            _placed[_numPlaced] = s;
+            _numPlaced += 1;
+        }
+
+        /** Set SQS to the increasing indices of the squares forming the
+         *  combination with rank RANK among the squares other than the N
+         *  squares indexed by the increasing sequence EXCLUDED[0 .. N-1]. */
+        private static void unrank(int rank, int[] sqs, int[] excluded,
+                                   int n) {
+            for (int k = sqs.length; k > 0; k -= 1) {
+                int c = k - 1;
+                while (BINOM[c + 1][k] <= rank) {
+                    c += 1;
+                }
+                sqs[k - 1] = c;
+                rank -= BINOM[c][k];
+            }
+            for (int k = 0; k < sqs.length; k += 1) {
+                int s = sqs[k];
+                for (int j = 0; j < n; j += 1) {
+                    if (excluded[j] <= s) {
+                        s += 1;
+                    }
+                }
+                sqs[k] = s;
+            }
+        }
+
+        /** Return the index, in the table for its material, of the
+         *  position on _board, which has just resulted from MOVE applied
+         *  to the position described by _king, _whiteSqs, and
+         *  _blackSqs. */
+        private int successorIndex(int move) {
+            int from = Move.fromIndex(move), to = Move.toIndex(move);
+            int king = _king == from ? to : _king;
+            int[] whites = survivors(_whiteSqs, from, to, WHITE);
+            int[] blacks = survivors(_blackSqs, from, to, BLACK);
+            return index(_board.turn(), king, whites, blacks);
+        }
+
+        /** Return the increasing sequence of squares holding pieces of
+         *  type P on _board, given that they held P at the squares SQS
+         *  before the move FROM-TO. */
+        private int[] survivors(int[] sqs, int from, int to, Piece p) {
+            int[] result = new int[_board.pieceCount(p)];
+            int n = 0;
+            for (int s : sqs) {
+                int t = s == from ? to : s;
+                if (_board.get(sq(t)) == p) {
+                    result[n++] = t;
+                }
+            }
+            Arrays.sort(result);
+            return result;
+        }
+
+        /** Numbers of white and black pieces. */
+        private final int _whites, _blacks;
+        /** Previously computed tables for fewer pieces. */
+        private final Tablebase[][] _tables;
+        /** Values and distances of my positions, by index. */
+        private final byte[] _values, _distances;
+        /** Largest distance in my table and in the smaller tables. */
+        private int _maxDistance, _subtableDistance;
+        /** Scratch board holding the position being resolved. */
+        private final Board _board = new Board();
+        /** Index of the king's square on _board. */
+        private int _king;
+        /** The squares of the king and white pieces in increasing order,
+         *  during setUp. */
+        private final int[] _taken;
+        /** _placed[0 .. _numPlaced-1] are the squares of the pieces that
+         *  setUp put on _board. */
+        private final int[] _placed;
+        /** Number of squares in _placed. */
+        private int _numPlaced;
+        /** Indices of the squares of the white and black pieces on
+         *  _board, in increasing order. */
+        private final int[] _whiteSqs, _blackSqs;
+        /** Buffer for the moves of the position on _board. */
+        private final int[] _moves = new int[Board.MAX_MOVES];
+        /** The squares of the white and black pieces of a predecessor
+         *  (see predecessorIndex). */
+        private final int[] _predWhites, _predBlacks;
+        /** Bit i of _marked[i / 64] is set iff position i is to be
+         *  visited in the current sweep, and likewise for _nextMarked and
+         *  the next sweep. */
+        private long[] _marked, _nextMarked;
+        /** Bit i of _exits[i / 64] is set iff position i has a move that
+         *  captures or wins, as found by the first sweep. */
+        private final long[] _exits;
+    }
+
+    /** BINOM[n][k] is n choose k, for k <= MAX_PIECES. */
+    private static final int[][] BINOM = new int[NUM_SQUARES + 1][];
+
+    static {
+        for (int n = 0; n <= NUM_SQUARES; n += 1) {
+            BINOM[n] = new int[MAX_PIECES + 2];
+            BINOM[n][0] = 1;
+            for (int k = 1; k < BINOM[n].length; k += 1) {
+                BINOM[n][k] = n == 0 ? 0 : BINOM[n - 1][k - 1]
+                    + BINOM[n - 1][k];
+            }
+        }
+    }
+
+    /** Numbers of white and black pieces in my positions. */
+    private final int _whites, _blacks;
+    /** Number of positions. */
+    private final int _size;
+    /** Header, packed values, and distances. */
+    private final ByteBuffer _data;
+    /** Largest distance recorded in the table. */
+    private final int _maxDistance;
+
+}
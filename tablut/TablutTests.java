@@ -3,7 +3,13 @@ package tablut;
 import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Junit tests for our Tablut Board class.
  *  @author Vivant Sakore
@@ -58,6 +64,26 @@ public class TablutTests {
         assertTrue(movesList.contains(Move.mv("h5-1")));
 
     }
+
+    @Test
+    public void testMoveBuffer() {
+        Board b = new Board();
+        b.makeMove(Square.sq("e2"), Square.sq("c2"));
+        b.makeMove(Square.sq("e3"), Square.sq("b3"));
+        int[] moves = new int[Board.MAX_MOVES + 3];
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            List<Move> movesList = b.legalMoves(side);
+            int n = b.legalMoves(side, moves, 3);
+            assertEquals(movesList.size(), n);
+            assertEquals(n, b.countMoves(side));
+            for (int k = 0; k < n; k += 1) {
+                assertTrue(movesList.contains(Move.mv(moves[k + 3])));
+            }
+        }
+        assertTrue(b.legalMoves(Piece.WHITE).contains(Move.mv("e4-2")));
+        assertFalse(b.legalMoves(Piece.WHITE).contains(Move.mv("e4-1")));
+    }
+
     @Test
     public void testget() {
         Board b = new Board();
@@ -99,6 +125,32 @@ public class TablutTests {
         assertEquals(Piece.EMPTY, b.get(Square.sq("d6")));
     }
 
+    @Test
+    public void testIsCapture() {
+        Board b = new Board();
+        b.makeMove(Square.sq("i6"), Square.sq("f6"));
+        b.makeMove(Square.sq("e6"), Square.sq("c6"));
+        b.makeMove(Square.sq("d9"), Square.sq("d6"));
+        assertTrue(b.isCapture(Move.code(Square.sq("e5"), Square.sq("e6"))));
+        assertFalse(b.isCapture(Move.code(Square.sq("c5"),
+                                          Square.sq("c4"))));
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.captureMoves(Piece.WHITE, moves, 0), captures = 0;
+        for (Move mv : b.legalMoves(Piece.WHITE)) {
+            if (b.isCapture(Move.code(mv.from(), mv.to()))) {
+                captures += 1;
+            }
+        }
+        assertEquals(captures, n);
+        assertTrue(n > 0);
+        for (int k = 0; k < n; k += 1) {
+            assertTrue(b.isLegal(Move.mv(moves[k])));
+            assertTrue(b.isCapture(moves[k]));
+        }
+        b.makeMove(Square.sq("e5"), Square.sq("e6"));
+        assertEquals(Piece.EMPTY, b.get(Square.sq("d6")));
+    }
+
     @Test
     public void testundo() {
         Board b = new Board();
@@ -115,6 +167,517 @@ public class TablutTests {
     }
 
 
+    @Test
+    public void testUndoCapture() {
+        Board b = new Board();
+        b.makeMove(Square.sq("i6"), Square.sq("f6"));
+        b.makeMove(Square.sq("e6"), Square.sq("c6"));
+        b.makeMove(Square.sq("d9"), Square.sq("d6"));
+        String before = b.encodedBoard();
+        long key = b.positionKey();
+        b.makeMove(Square.sq("e5"), Square.sq("e6"));
+        assertEquals(Piece.EMPTY, b.get(Square.sq("d6")));
+        b.undo();
+        assertEquals(Piece.BLACK, b.get(Square.sq("d6")));
+        assertEquals(Piece.WHITE, b.turn());
+        assertEquals(before, b.encodedBoard());
+        assertEquals(key, b.positionKey());
+    }
+
+    @Test
+    public void testRepetition() {
+        Board b = new Board();
+        String[] shuffle = { "d1-c", "e3-d", "c1-d", "d3-e" };
+        for (String mv : shuffle) {
+            b.makeMove(Move.mv(mv));
+        }
+        assertNull(b.winner());
+        assertTrue(b.hasMove(b.turn()));
+        b.makeMove(Move.mv("d1-c"));
+        assertTrue(b.repeatedPosition());
+        assertEquals(Piece.WHITE, b.winner());
+        b.undo();
+        assertFalse(b.repeatedPosition());
+        assertNull(b.winner());
+        Board c = new Board(b);
+        c.makeMove(Move.mv("d1-c"));
+        assertEquals(Piece.WHITE, c.winner());
+        b.clearUndo();
+        b.makeMove(Move.mv("d1-c"));
+        assertNull(b.winner());
+    }
+
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        assertEquals(80, b.perft(1));
+        assertEquals(4400, b.perft(2));
+        assertEquals(353200, b.perft(3));
+        assertEquals(new Board().encodedBoard(), b.encodedBoard());
+        Board c = new Board();
+        c.setPosition(b.encodedBoard());
+        assertEquals(b.positionKey(), c.positionKey());
+    }
+
+    @Test
+    public void testIncrementalState() {
+        Board b = new Board();
+        String[] moves = { "i6-f", "e6-c", "d9-6", "e5-6", "f9-7", "e4-d" };
+        for (String mv : moves) {
+            b.makeMove(Move.mv(mv));
+            checkIncrementalState(b);
+            checkIncrementalState(new Board(b));
+        }
+        assertEquals(Square.sq("e6"), b.kingPosition());
+        assertEquals(1, b.kingAttackers());
+        for (int k = 0; k < moves.length; k += 1) {
+            b.undo();
+            checkIncrementalState(b);
+        }
+        assertEquals(Board.THRONE, b.kingPosition());
+        assertEquals(0, b.kingEscapeRoutes());
+        assertEquals(0, b.kingMobility());
+        assertEquals(Board.SIZE / 2, b.kingEscapeDistance());
+    }
+
+    /** Check the incrementally maintained quantities of B against a
+     *  count of its squares. */
+    private void checkIncrementalState(Board b) {
+        int[] counts = new int[Piece.values().length];
+        Square king = null;
+        for (Square sq : Square.SQUARE_LIST) {
+            counts[b.get(sq).ordinal()] += 1;
+            if (b.get(sq) == Piece.KING) {
+                king = sq;
+            }
+        }
+        for (Piece p : Piece.values()) {
+            assertEquals(counts[p.ordinal()], b.pieceCount(p));
+        }
+        assertEquals(king, b.kingPosition());
+        int attackers = 0, mobility = 0, routes = 0;
+        for (int d = 0; d < 4; d += 1) {
+            Square adj = king.rookMove(d, 1);
+            if (adj != null && b.get(adj) == Piece.BLACK) {
+                attackers += 1;
+            }
+            int k;
+            for (k = 1; king.rookMove(d, k) != null
+                     && b.get(king.rookMove(d, k)) == Piece.EMPTY; k += 1) {
+                mobility += 1;
+            }
+            if (king.rookMove(d, k) == null) {
+                routes += 1;
+            }
+        }
+        int cordon = 0;
+        for (Square sq : Square.SQUARE_LIST) {
+            if (b.get(sq) == Piece.BLACK
+                && sq.distance(king) <= Board.CORDON_RADIUS) {
+                cordon += 1;
+            }
+        }
+        assertEquals(attackers, b.kingAttackers());
+        assertEquals(cordon, b.kingCordon());
+        assertEquals(mobility, b.kingMobility());
+        assertEquals(routes, b.kingEscapeRoutes());
+    }
+
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(4);
+        int mv = Move.code(Square.sq("e2"), Square.sq("c2"));
+        assertEquals(0, table.entry(17));
+        table.store(17, mv, -1234, 5, TranspositionTable.UPPER_BOUND);
+        long entry = table.entry(17);
+        assertEquals(mv, TranspositionTable.entryMove(entry));
+        assertEquals(-1234, TranspositionTable.score(entry));
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.UPPER_BOUND,
+                     TranspositionTable.bound(entry));
+        assertEquals(mv, table.move(17));
+        assertEquals(0, table.entry(33));
+        table.store(33, 0);
+        assertEquals(TranspositionTable.NO_MOVE, table.move(17));
+        assertEquals(TranspositionTable.NO_BOUND,
+                     TranspositionTable.bound(table.entry(33)));
+    }
+
+    @Test
+    public void testSearchStats() {
+        AI ai = new AI(1);
+        ai.findMove(new Board(), 3);
+        SearchStats stats = ai.lastStats();
+        assertEquals(3, stats.depth());
+        assertEquals(ai.lastNodeCount(), stats.nodes());
+        assertTrue(stats.quiescenceNodes() <= stats.nodes());
+        assertTrue(stats.ttHits() <= stats.ttProbes());
+        assertTrue(stats.ttCutoffs() <= stats.ttHits());
+        assertTrue(stats.cutoffs(0) > 0);
+        assertTrue(stats.toJSON().startsWith("{\"depth\": 3,"));
+    }
+
+    @Test
+    public void testSymmetry() {
+        Board b = new Board();
+        b.makeMove(Square.sq("e2"), Square.sq("c2"));
+        b.makeMove(Square.sq("e3"), Square.sq("b3"));
+        String encoded = b.encodedBoard();
+        for (int t = 0; t < Square.SYMMETRIES; t += 1) {
+            char[] image = encoded.toCharArray();
+            for (int i = 0; i < Square.NUM_SQUARES; i += 1) {
+                image[Square.SYMMETRY[t][i] + 1] = encoded.charAt(i + 1);
+            }
+            Board c = new Board();
+            c.setPosition(new String(image));
+            assertEquals(b.symmetricKey(t), c.positionKey());
+            assertEquals(b.canonicalKey(), c.canonicalKey());
+            int u = Square.INVERSE_SYMMETRY[t];
+            for (Move mv : b.legalMoves(b.turn())) {
+                int code = Move.code(mv.from(), mv.to());
+                Move mapped = Move.mv(Move.symmetric(code, t));
+                assertTrue(c.isLegal(mapped));
+                assertEquals(code,
+                             Move.symmetric(Move.symmetric(code, t), u));
+            }
+        }
+    }
+
+    @Test
+    public void testOpeningBook() throws IOException {
+        Board b = new Board();
+        Map<Long, Integer> entries = new HashMap<>();
+        int sym = b.canonicalSymmetry();
+        entries.put(b.canonicalKey(),
+                    Move.symmetric(Move.code(Square.sq("e2"),
+                                             Square.sq("c2")), sym));
+        b.makeMove(Square.sq("e2"), Square.sq("c2"));
+        sym = b.canonicalSymmetry();
+        entries.put(b.canonicalKey(),
+                    Move.symmetric(Move.code(Square.sq("e3"),
+                                             Square.sq("b3")), sym));
+        File file = File.createTempFile("book", ".bin");
+        file.deleteOnExit();
+        OpeningBook.write(file.getPath(), entries);
+        OpeningBook book = new OpeningBook(file.getPath());
+        assertEquals(2, book.size());
+        assertEquals(Move.mv("e3-b"), Move.mv(book.move(b)));
+        Board mirror = new Board();
+        mirror.makeMove(Square.sq("e8"), Square.sq("c8"));
+        assertEquals(Move.mv("e7-b"), Move.mv(book.move(mirror)));
+        b.makeMove(Square.sq("e3"), Square.sq("b3"));
+        assertEquals(OpeningBook.NO_MOVE, book.move(b));
+    }
+
+    @Test
+    public void testTablebase() throws IOException {
+        File dir = Files.createTempDirectory("tablebase").toFile();
+        Tablebase.main(dir.getPath(), "2");
+        Tablebase[][] tables = Tablebase.load(dir.getPath());
+        for (File file : dir.listFiles()) {
+            file.deleteOnExit();
+        }
+        dir.deleteOnExit();
+        assertNotNull(tables[0][1]);
+        assertNull(tables[1][1]);
+
+        Board b = new Board();
+        b.setPosition("B" + "B" + "-".repeat(39) + "K" + "-".repeat(40));
+        Tablebase table = tables[0][1];
+        int index = table.index(b);
+        assertEquals(Tablebase.LOSS, table.value(index));
+        assertEquals(2, table.distance(index));
+        b.makeMove(Square.sq("a1"), Square.sq("b1"));
+        index = table.index(b);
+        assertEquals(Tablebase.WIN, table.value(index));
+        assertEquals(1, table.distance(index));
+        assertEquals(index, table.index(b, new int[0], new int[1]));
+
+        Board start = new Board();
+        int[] squares = new int[Board.INITIAL_ATTACKERS.length];
+        assertEquals(squares.length, start.squaresOf(Piece.BLACK, squares));
+        for (int k = 0; k < squares.length; k += 1) {
+            assertEquals(Piece.BLACK, start.get(Square.sq(squares[k])));
+            assertTrue(k == 0 || squares[k - 1] < squares[k]);
+        }
+
+        assertEquals(973620648000L, Tablebase.size(3, 3));
+        assertFalse(Tablebase.fits(3, 3));
+        assertTrue(Tablebase.fits(2, 2));
+        assertEquals(5, Tablebase.maxPieces());
+    }
+
+    @Test
+    public void testRemotePlayer() throws IOException {
+        AI engine = new AI(1);
+        Board b = new Board();
+        assertTrue(EngineServer.respond(engine, b, new String[] {
+                    "position", "junk" }).startsWith("error"));
+        assertTrue(EngineServer.respond(engine, b, new String[] {
+                    "go", "x" }).startsWith("error"));
+        long start = System.nanoTime();
+        Move timed = engine.findMove(b, Analyzer.TIMED_DEPTH, 50000000L);
+        assertTrue(b.isLegal(timed));
+        assertTrue(System.nanoTime() - start < 5000000000L);
+
+        EngineServer server = new EngineServer(0, engine);
+        Thread serving = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException excp) {
+                    throw new IllegalStateException(excp);
+                }
+        });
+        serving.start();
+        try {
+            RemotePlayer template =
+                new RemotePlayer(Integer.toString(server.port()), 100);
+            Controller controller =
+                new Controller(new NullView(), null, new TextReporter(),
+                               new TextPlayer(), template, false);
+            controller.executeCommand("a4-3");
+            Player white = template.create(Piece.WHITE, controller);
+            for (int i = 0; i < 2; i += 1) {
+                Move mv = Move.mv(white.myMove());
+                assertNotNull(mv);
+                assertTrue(controller.board().isLegal(mv));
+                assertTrue(white.lastNodeCount() > 0);
+            }
+            white.close();
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testGameArchive() throws IOException {
+        File file = File.createTempFile("games", ".tga");
+        file.delete();
+        file.deleteOnExit();
+        Board game = new Board();
+        game.setMoveLimit(50);
+        List<String> positions = new ArrayList<>();
+        for (int i = 0; i < 10; i += 1) {
+            positions.add(game.encodedBoard());
+            List<Move> moves = game.legalMoves(game.turn());
+            game.makeMove(moves.get(i * 7 % moves.size()));
+        }
+        positions.add(game.encodedBoard());
+        Board edited = new Board();
+        edited.setPosition("W" + "-".repeat(40) + "K" + "-".repeat(40));
+        edited.makeMove(Move.mv("e5-a"));
+        try (GameArchive.Writer out = new GameArchive.Writer(file.getPath())) {
+            assertEquals(0, out.add(game, 17));
+            assertEquals(1, out.add(edited, 18));
+        }
+        try (GameArchive.Writer out = new GameArchive.Writer(file.getPath())) {
+            assertEquals(2, out.add(game, 19, Piece.BLACK));
+        }
+
+        try (GameArchive archive = new GameArchive(file.getPath())) {
+            assertEquals(3, archive.size());
+            GameArchive.Game g0 = archive.game(0);
+            assertEquals(17, g0.seed());
+            assertNull(g0.winner());
+            assertEquals(10, g0.length());
+            for (int n = 0; n <= 10; n += 1) {
+                assertEquals(positions.get(n), g0.replay(n).encodedBoard());
+            }
+            assertEquals(50, g0.replay(10).moveLimit());
+            GameArchive.Game g1 = archive.game(1);
+            assertEquals(Piece.WHITE, g1.winner());
+            assertEquals(Move.mv("e5-a"), g1.move(0));
+            assertEquals(edited.encodedBoard(), g1.replay(1).encodedBoard());
+            assertEquals(Piece.BLACK, archive.game(2).winner());
+            assertEquals(positions.get(10),
+                         archive.game(2).replay(10).encodedBoard());
+        }
+
+        file.delete();
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(1), false);
+        try (GameArchive.Writer out = new GameArchive.Writer(file.getPath())) {
+            controller.setArchive(out);
+            controller.executeCommand("manual white");
+            controller.executeCommand("limit 1");
+            controller.executeCommand("a4-3");
+            assertNull(controller.winner());
+            controller.executeCommand("e3-b");
+            assertEquals(Piece.WHITE, controller.winner());
+        }
+        try (GameArchive archive = new GameArchive(file.getPath())) {
+            assertEquals(1, archive.size());
+            assertEquals(Piece.WHITE, archive.game(0).winner());
+        }
+    }
+
+    @Test
+    public void testEvaluation() throws IOException {
+        Board b = new Board();
+        String[] moves = { "i6-f", "e6-c", "d9-6", "e5-6", "f9-7", "e4-d" };
+        for (String mv : moves) {
+            b.makeMove(Move.mv(mv));
+        }
+        Evaluation eval = new Evaluation(16, 2, 3, -4, 5, -6);
+        int[] features = new int[Evaluation.FEATURES];
+        Evaluation.features(b, features, 0);
+        int score = 0;
+        for (int f = 0; f < Evaluation.FEATURES; f += 1) {
+            score += eval.weight(f) * features[f];
+        }
+        assertEquals(score, eval.score(b));
+        AI ai = new AI(1);
+        ai.setEvaluation(eval);
+        assertEquals(score, ai.staticScore(b));
+
+        File file = File.createTempFile("texel", ".tga");
+        file.delete();
+        file.deleteOnExit();
+        Board game = new Board();
+        for (int i = 0; i < 20 && game.winner() == null; i += 1) {
+            game.makeMove(ai.findMove(game, 2));
+        }
+        try (GameArchive.Writer out = new GameArchive.Writer(file.getPath())) {
+            out.add(b, 1, Piece.WHITE);
+            out.add(game, 2, Piece.BLACK);
+        }
+        Texel texel = new Texel(2);
+        try (GameArchive archive = new GameArchive(file.getPath())) {
+            texel.add(archive);
+        }
+        assertTrue(texel.size() > 0);
+        texel.fitScale(Evaluation.DEFAULT);
+        Evaluation tuned = texel.tune(Evaluation.DEFAULT, 20);
+        assertEquals(Evaluation.PIECE_VALUE,
+                     tuned.weight(Evaluation.MATERIAL));
+        assertTrue(texel.error(tuned)
+                   <= texel.error(Evaluation.DEFAULT) + 1e-9);
+        texel.close();
+    }
+
+    @Test
+    public void testParsing() throws InterruptedException {
+        String chars = "`ai{09-:A ";
+        char[] str = new char[4];
+        for (int k = 0; k < Math.pow(chars.length(), 4); k += 1) {
+            for (int i = 0, n = k; i < 4; i += 1, n /= chars.length()) {
+                str[i] = chars.charAt(n % chars.length());
+            }
+            String text = new String(str);
+            assertEquals(text, Move.MOVE_PATTERN.matcher(text).matches(),
+                         Move.isGrammaticalMove(text));
+        }
+        assertEquals("e3-c", Move.mv("e3-c").toString());
+        assertEquals("e3-5", Move.mv("e3-5").toString());
+        assertNull(Move.mv("e3-e"));
+        assertNull(Move.mv("e3-c "));
+
+        Thread[] threads = new Thread[4];
+        boolean[] ok = new boolean[threads.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            int me = t;
+            threads[t] = new Thread(() -> {
+                    ok[me] = true;
+                    for (int i = 0; i < 10000; i += 1) {
+                        int sq = (i + me) % Square.NUM_SQUARES;
+                        for (Move mv : Move.ROOK_MOVES[sq][i % 4]) {
+                            ok[me] &= Move.mv(mv.toString()) == mv;
+                        }
+                    }
+            });
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertTrue(ok[t]);
+        }
+
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(1), false);
+        controller.executeCommand("  SEED \t 5  # comment");
+        controller.executeCommand("limit 10");
+        controller.executeCommand("# just a comment");
+        controller.executeCommand("Toggle  A1");
+        assertEquals(Piece.WHITE, controller.board().get(Square.sq("a1")));
+        controller.executeCommand("a4-3#");
+        assertEquals(Piece.BLACK, controller.board().get(Square.sq("a3")));
+        for (String bad : new String[] {
+                "seed", "seed 5x", "seedx 5", "seed5", "quit now",
+                "toggle j1", "manual red", "e3-e", "a4-3 b" }) {
+            try {
+                controller.executeCommand(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testVariants() {
+        assertEquals(Variant.TABLUT, Board.VARIANT);
+        for (Variant v : Variant.VARIANTS) {
+            int n = v.size(), whites = 0, blacks = 0;
+            assertEquals(v, Variant.named(v.name()));
+            assertEquals(Piece.KING, v.initial(n / 2, n / 2));
+            for (int c = 0; c < n; c += 1) {
+                for (int r = 0; r < n; r += 1) {
+                    Piece p = v.initial(c, r);
+                    assertNotNull(p);
+                    assertEquals(p, v.initial(n - 1 - c, r));
+                    assertEquals(p, v.initial(r, c));
+                    whites += p == Piece.WHITE ? 1 : 0;
+                    blacks += p == Piece.BLACK ? 1 : 0;
+                }
+            }
+            assertTrue(v.name(), blacks > whites && whites > 0);
+        }
+        assertTrue(Board.isEscape(Square.sq("a5")));
+        assertFalse(Board.isEscape(Square.sq("b5")));
+        assertEquals(16, Board.INITIAL_ATTACKERS.length);
+        assertEquals(8, Board.INITIAL_DEFENDERS.length);
+        assertNull(Move.mv("a10-1"));
+        assertNull(Move.mv("a1-10"));
+        assertEquals(Square.sq("i9"), Square.parse("i9", 0, 2));
+    }
+
+    @Test
+    public void testMCTS() {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-3"));
+        String before = b.toString();
+        for (int threads = 1; threads <= 2; threads += 1) {
+            MCTSPlayer player = new MCTSPlayer(threads);
+            player.setPlayouts(300);
+            for (int i = 0; i < 2; i += 1) {
+                Move mv = player.findMove(b);
+                assertTrue(b.isLegal(mv));
+                assertEquals(before, b.toString());
+                assertEquals(300, player.lastNodeCount());
+            }
+        }
+
+        Controller controller =
+            new Controller(new NullView(), null, new TextReporter(),
+                           new TextPlayer(), new AI(1), false);
+        controller.executeCommand("manual white");
+        controller.executeCommand("auto black  mcts");
+        assertFalse(controller.manualBlack());
+        controller.executeCommand("auto white");
+        assertFalse(controller.manualWhite());
+        for (String bad : new String[] {
+                "auto black alphabeta", "auto red mcts", "auto" }) {
+            try {
+                controller.executeCommand(bad);
+                fail("accepted " + bad);
+            } catch (IllegalArgumentException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
     private void buildBoard(Board b, Piece[][] target) {
         for (int col = 0; col < Board.SIZE; col++) {
             for (int row = Board.SIZE - 1; row >= 0; row--) {
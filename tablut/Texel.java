@@ -0,0 +1,327 @@
+package tablut;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static tablut.Evaluation.*;
+import static tablut.Piece.*;
+
+/** Tuning of the weights of an Evaluation by the Texel method: logistic
+ *  regression of the results of recorded games on the features of their
+ *  positions.  The predicted result of a position with score S (under
+ *  the evaluation being tuned) is 1 / (1 + exp(-K S)), where 1 is a win
+ *  for white, 0 a win for black, and 1/2 a game with no winner.  K is
+ *  first chosen to best fit the results using the starting weights, and
+ *  the weights (all but that of MATERIAL, which sets the scale) are then
+ *  adjusted by gradient descent to minimize the mean squared difference
+ *  between the predicted and actual results, plus a cost for straying
+ *  from the starting weights (see REGULARIZATION).  Only quiet positions
+ *  are used: those after the random opening moves of a Tournament game
+ *  in which the king has not escaped, cannot be captured or escape at
+ *  once, and the side to move has no capture.  The features are held in
+ *  one int array and the results in another, and each step of the
+ *  descent divides them among threads.  Record games with Tournament
+ *  (whose ARCHIVE argument names a GameArchive), and then run
+ *      java -cp .. tablut.Texel ARCHIVE [ITERATIONS [THREADS [GAMES]]]
+ *  to print the tuned weights and, if GAMES is given, the result of a
+ *  match of that many games between the tuned and default weights.
+ *  @author Mingyan Zou
+ */
+class Texel {
+
+    /** Default number of steps of gradient descent. */
+    private static final int ITERATIONS = 2000;
+
+    /** Positions before this move of each game are not used, since they
+     *  arise from the random opening moves of Tournament games. */
+    private static final int SKIP_PLIES = 4;
+
+    /** The size of the steps of gradient descent (see tune). */
+    private static final double LEARNING_RATE = 0.1;
+
+    /** The cost, added to the error, of each unit of squared difference
+     *  between a weight and its starting value.  Without it, the weights
+     *  that best fit the results of games differ wildly from the starting
+     *  ones and play worse than weights that fit them less well. */
+    private static final double REGULARIZATION = 1e-4;
+
+    /** Decay rates of the running averages of the gradient and of its
+     *  square kept by tune. */
+    private static final double BETA1 = 0.9, BETA2 = 0.999;
+
+    /** Bounds on K. */
+    private static final double MIN_SCALE = 1e-4, MAX_SCALE = 1;
+    /** Number of steps of the ternary search for K, each of which
+     *  narrows the range by a third. */
+    private static final int SCALE_STEPS = 60;
+
+    /** Seed for the openings of the verification match. */
+    private static final long SEED = 61;
+
+    /** Tune the default weights to the games in the archive named by
+     *  ARGS[0], as described in the class comment. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: java tablut.Texel ARCHIVE"
+                               + " [ITERATIONS [THREADS [GAMES]]]");
+            System.exit(1);
+        }
+        int iterations =
+            args.length > 1 ? Integer.parseInt(args[1]) : ITERATIONS;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        int games = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        Texel texel = new Texel(threads);
+        try (GameArchive archive = new GameArchive(args[0])) {
+            texel.add(archive);
+        }
+        System.out.printf("%d positions%n", texel.size());
+        if (texel.size() == 0) {
+            return;
+        }
+        texel.fitScale(DEFAULT);
+        System.out.printf("K = %.5f, error %.6f: %s%n", texel.scale(),
+                          texel.error(DEFAULT), DEFAULT);
+        long start = System.nanoTime();
+        Evaluation tuned = texel.tune(DEFAULT, iterations);
+        System.out.printf("after %d steps (%d ms), error %.6f: %s%n",
+                          iterations, (System.nanoTime() - start) / 1000000,
+                          texel.error(tuned), tuned);
+        System.out.printf("new Evaluation(%s)%n",
+                          Arrays.toString(tuned.weights())
+                          .replaceAll("[\\[\\]]", ""));
+        texel.close();
+
+        if (games > 0) {
+            AI candidate = new AI(1), baseline = new AI(1);
+            candidate.setEvaluation(tuned);
+            Tournament match = new Tournament(games, SEED, candidate,
+                                              baseline);
+            match.play(threads);
+            double score = match.firstScore();
+            System.out.printf("tuned vs. default: %.1f%% in %d games,"
+                              + " %+.0f Elo%n", 100 * score, games,
+                              Tournament.elo(score, games));
+        }
+    }
+
+    /** A tuner with no positions that computes with THREADS threads. */
+    Texel(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Add the quiet positions (see the class comment) of the games in
+     *  ARCHIVE to those I fit. */
+    void add(GameArchive archive) throws IOException {
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int g = 0; g < archive.size(); g += 1) {
+            GameArchive.Game game = archive.game(g);
+            byte result = (byte) (game.winner() == WHITE ? 2
+                                  : game.winner() == BLACK ? 0 : 1);
+            Board board = game.replay(0);
+            for (int i = 0; i < game.length(); i += 1) {
+                if (i >= SKIP_PLIES && isQuiet(board, moves)) {
+                    add(board, result);
+                }
+                board.makeMove(game.move(i));
+            }
+        }
+    }
+
+    /** Return true iff BOARD is quiet, using MOVES to hold moves. */
+    private static boolean isQuiet(Board board, int[] moves) {
+        Square king = board.kingPosition();
+        return board.winner() == null && king != null
+            && !Board.isEscape(king)
+            && (Board.mustSurroundKing(king) || board.kingAttackers() == 0)
+            && (board.turn() == BLACK || board.kingEscapeRoutes() == 0)
+            && board.captureMoves(board.turn(), moves, 0) == 0;
+    }
+
+    /** Add BOARD, from a game whose result in halves of a point for white
+     *  is RESULT, to my positions. */
+    private void add(Board board, byte result) {
+        if (_size == _results.length) {
+            _results = Arrays.copyOf(_results, 2 * _size);
+            _features = Arrays.copyOf(_features, 2 * _size * FEATURES);
+        }
+        Evaluation.features(board, _features, _size * FEATURES);
+        _results[_size] = result;
+        _size += 1;
+    }
+
+    /** Return the number of positions I fit. */
+    int size() {
+        return _size;
+    }
+
+    /** Return K (see the class comment). */
+    double scale() {
+        return _scale;
+    }
+
+    /** Set K to the value that best fits my positions under
+     *  EVALUATION. */
+    void fitScale(Evaluation evaluation) {
+        double[] weights = toDoubles(evaluation);
+        double low = Math.log(MIN_SCALE), high = Math.log(MAX_SCALE);
+        for (int k = 0; k < SCALE_STEPS; k += 1) {
+            double third = (high - low) / 3;
+            _scale = Math.exp(low + third);
+            double lowError = compute(weights, null);
+            _scale = Math.exp(high - third);
+            if (lowError < compute(weights, null)) {
+                high -= third;
+            } else {
+                low += third;
+            }
+        }
+        _scale = Math.exp((low + high) / 2);
+    }
+
+    /** Return the mean squared error of the results predicted by
+     *  EVALUATION for my positions. */
+    double error(Evaluation evaluation) {
+        return compute(toDoubles(evaluation), null);
+    }
+
+    /** Return the Evaluation produced by ITERATIONS steps of gradient
+     *  descent from START (see the class comment), with the
+     *  REGULARIZATION cost of the distance of the weights from START. */
+    Evaluation tune(Evaluation start, int iterations) {
+        double[] weights = toDoubles(start),
+            gradient = new double[FEATURES],
+            mean = new double[FEATURES],
+            meanSquare = new double[FEATURES];
+        for (int t = 1; t <= iterations; t += 1) {
+            compute(weights, gradient);
+            for (int f = 0; f < FEATURES; f += 1) {
+                if (f == MATERIAL) {
+                    continue;
+                }
+                gradient[f] +=
+                    2 * REGULARIZATION * (weights[f] - start.weight(f));
+                mean[f] = BETA1 * mean[f] + (1 - BETA1) * gradient[f];
+                meanSquare[f] = BETA2 * meanSquare[f]
+                    + (1 - BETA2) * gradient[f] * gradient[f];
+                double m = mean[f] / (1 - Math.pow(BETA1, t)),
+                    v = meanSquare[f] / (1 - Math.pow(BETA2, t));
+                weights[f] -= LEARNING_RATE * m / (Math.sqrt(v) + 1e-12);
+            }
+        }
+        int[] rounded = new int[FEATURES];
+        for (int f = 0; f < FEATURES; f += 1) {
+            rounded[f] = (int) Math.round(weights[f]);
+        }
+        return new Evaluation(rounded);
+    }
+
+    /** Return the mean squared error of the results predicted with
+     *  WEIGHTS for my positions, and, if GRADIENT is not null, set it to
+     *  the gradient of that error with respect to WEIGHTS.  The positions
+     *  are divided among my threads. */
+    private double compute(double[] weights, double[] gradient) {
+        int chunk = (_size + _threads - 1) / _threads;
+        List<Future<double[]>> parts = new ArrayList<>();
+        for (int from = 0; from < _size; from += chunk) {
+            int lo = from, hi = Math.min(_size, from + chunk);
+            parts.add(pool().submit(() ->
+                                    compute(weights, gradient != null,
+                                            lo, hi)));
+        }
+        double error = 0;
+        if (gradient != null) {
+            Arrays.fill(gradient, 0);
+        }
+        try {
+            for (Future<double[]> part : parts) {
+                double[] sums = part.get();
+                error += sums[FEATURES];
+                if (gradient != null) {
+                    for (int f = 0; f < FEATURES; f += 1) {
+                        gradient[f] += sums[f] / _size;
+                    }
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        }
+        return error / _size;
+    }
+
+    /** Return the sums over positions LO to HI - 1 of the squared error of
+     *  the results predicted with WEIGHTS (as the last element) and, iff
+     *  GRADIENT, of its gradient with respect to each weight. */
+    private double[] compute(double[] weights, boolean gradient,
+                             int lo, int hi) {
+        double[] sums = new double[FEATURES + 1];
+        for (int i = lo; i < hi; i += 1) {
+            int base = i * FEATURES;
+            double score = 0;
+            for (int f = 0; f < FEATURES; f += 1) {
+                score += weights[f] * _features[base + f];
+            }
+            double predicted = 1 / (1 + Math.exp(-_scale * score)),
+                diff = predicted - _results[i] / 2.0;
+            sums[FEATURES] += diff * diff;
+            if (gradient) {
+                double slope =
+                    2 * diff * _scale * predicted * (1 - predicted);
+                for (int f = 0; f < FEATURES; f += 1) {
+                    sums[f] += slope * _features[base + f];
+                }
+            }
+        }
+        return sums;
+    }
+
+    /** Return the weights of EVALUATION as doubles. */
+    private static double[] toDoubles(Evaluation evaluation) {
+        double[] weights = new double[FEATURES];
+        for (int f = 0; f < FEATURES; f += 1) {
+            weights[f] = evaluation.weight(f);
+        }
+        return weights;
+    }
+
+    /** Return my thread pool, creating it if need be. */
+    private ExecutorService pool() {
+        if (_pool == null) {
+            _pool = Executors.newFixedThreadPool(_threads);
+        }
+        return _pool;
+    }
+
+    /** Stop my threads. */
+    void close() {
+        if (_pool != null) {
+            _pool.shutdown();
+            _pool = null;
+        }
+    }
+
+    /** Number of threads used to compute errors and gradients. */
+    private final int _threads;
+    /** Pool of _threads threads, or null if not yet needed. */
+    private ExecutorService _pool;
+    /** Number of positions. */
+    private int _size;
+    /** The features of position i are _features[i * FEATURES] ...
+     *  _features[i * FEATURES + FEATURES - 1] (see
+     *  Evaluation.features). */
+    private int[] _features = new int[64 * FEATURES];
+    /** _results[i] is the result of the game of position i, in halves of
+     *  a point for white. */
+    private byte[] _results = new byte[64];
+    /** K (see the class comment). */
+    private double _scale = 1;
+}
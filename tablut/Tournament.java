@@ -0,0 +1,425 @@
+package tablut;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static tablut.Piece.*;
+
+/** Headless self-play between automated players, for evaluating changes
+ *  to the AI.  Games run in parallel, each with its own Controller (and
+ *  so its own Board), whose random-number generator is seeded from the
+ *  tournament seed and the game number and chooses the first few moves
+ *  of the game, so that games differ.  Run with
+ *      java -cp .. tablut.Tournament [GAMES [THREADS [SEED [REPORT
+ *          [ARCHIVE]]]]]
+ *  The summary (win rates, game lengths, search speed, and percentiles of
+ *  the time taken per move) goes to the standard output.  If REPORT is
+ *  given, the results of each game are also written to it as CSV or, if
+ *  its name ends in ".json", as JSON together with the summary.  If
+ *  ARCHIVE is given, the games are added to the GameArchive it names.
+ *  @author Mingyan Zou
+ */
+class Tournament {
+
+    /** Default number of games. */
+    private static final int GAMES = 100;
+
+    /** Default tournament seed. */
+    private static final long SEED = 61;
+
+    /** Number of random moves at the start of each game. */
+    private static final int RANDOM_PLIES = 4;
+
+    /** Games end after this many moves, which the side to move loses, as
+     *  it would any position with no legal move (see
+     *  Controller.doMove). */
+    private static final int MOVE_LIMIT = 200;
+
+    /** Percentiles of the time taken per move that are reported. */
+    private static final int[] PERCENTILES = { 50, 90, 99, 100 };
+
+    /** Play the tournament described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : GAMES;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : SEED;
+        Tournament tournament = new Tournament(games, seed);
+        tournament.play(threads);
+        tournament.printSummary(System.out);
+        if (args.length > 3) {
+            try (PrintStream out = new PrintStream(args[3])) {
+                if (args[3].endsWith(".json")) {
+                    tournament.writeJSON(out);
+                } else {
+                    tournament.writeCSV(out);
+                }
+            } catch (FileNotFoundException excp) {
+                System.err.printf("Could not open %s%n", args[3]);
+                System.exit(1);
+            }
+        }
+        if (args.length > 4) {
+            try (GameArchive.Writer out = new GameArchive.Writer(args[4])) {
+                tournament.writeArchive(out);
+            } catch (IOException excp) {
+                System.err.printf("Could not write %s: %s%n", args[4],
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+    }
+
+    /** A tournament of GAMES games, whose random openings are determined
+     *  by SEED, between default automated players. */
+    Tournament(int games, long seed) {
+        this(games, seed, new AI(1));
+    }
+
+    /** A tournament of GAMES games, whose random openings are determined
+     *  by SEED, between two automated players created from TEMPLATE.
+     *  The games are not paired, so each has its own opening. */
+    private Tournament(int games, long seed, Player template) {
+        this(games, seed, template, template);
+    }
+
+    /** A tournament of GAMES games, whose random openings are determined
+     *  by SEED, between automated players created from the templates
+     *  FIRST and SECOND.  Unless FIRST and SECOND are the same object,
+     *  the games are played in pairs with the same opening, FIRST playing
+     *  white in the first game of each pair and black in the second.  A
+     *  player that answers anything but a legal move (as a RemotePlayer
+     *  does when its engine fails) forfeits the game. */
+    Tournament(int games, long seed, Player first, Player second) {
+        _games = games;
+        _seed = seed;
+        _first = first;
+        _second = second;
+    }
+
+    /** Play all my games, THREADS at a time. */
+    void play(int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        _start = System.nanoTime();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int g = 0; g < _games; g += 1) {
+                int game = g;
+                futures.add(pool.submit(() -> playGame(game)));
+            }
+            _results.clear();
+            for (Future<Result> future : futures) {
+                _results.add(future.get());
+            }
+        } catch (InterruptedException excp) {
+            throw new Error("unexpected interrupt");
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException(excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = 0;
+        for (Result r : _results) {
+            _elapsed = Math.max(_elapsed, r.elapsed);
+        }
+    }
+
+    /** Return the results of the games played, in order. */
+    List<Result> results() {
+        return _results;
+    }
+
+    /** The outcome of one game. */
+    static class Result {
+        /** Seed for the game. */
+        long seed;
+        /** True iff the first player played white. */
+        boolean firstWhite;
+        /** The winner, or null if the game was drawn. */
+        Piece winner;
+        /** True iff the loser forfeited. */
+        boolean forfeit;
+        /** Number of moves in the game. */
+        int moves;
+        /** Positions searched and nanoseconds spent searching. */
+        long nodes, searchTime;
+        /** Positions searched by the first and second players. */
+        long[] playerNodes = new long[2];
+        /** Moves searched by the first and second players. */
+        int[] playerSearches = new int[2];
+        /** Nanoseconds taken by each searched move. */
+        long[] latencies;
+        /** Nanoseconds from the start of play to the end of this
+         *  game. */
+        long elapsed;
+        /** The final position, with the moves of the game to undo. */
+        Board board;
+    }
+
+    /** Play game number GAME (from 0) and return its result. */
+    private Result playGame(int game) {
+        boolean paired = _first != _second;
+        long seed = _seed + (paired ? game / 2 : game);
+        boolean firstWhite = !paired || game % 2 == 0;
+        Controller controller =
+            new Controller(new NullView(), null, QUIET, PLACEHOLDER,
+                           PLACEHOLDER, false);
+        controller.setSeed(seed);
+        controller.executeCommand("limit " + MOVE_LIMIT);
+        Player white = (firstWhite ? _first : _second)
+            .create(WHITE, controller),
+            black = (firstWhite ? _second : _first)
+            .create(BLACK, controller);
+        controller.setPlayers(white, black);
+        Board board = controller.board();
+        Result result = new Result();
+        result.seed = seed;
+        result.firstWhite = firstWhite;
+        long[] latencies = new long[MOVE_LIMIT + 1];
+        int searched = 0;
+
+        while (board.winner() == null && board.hasMove(board.turn())) {
+            String move;
+            if (board.moveCount() < RANDOM_PLIES) {
+                List<Move> moves = board.legalMoves(board.turn());
+                move = moves.get(controller.randInt(moves.size())).toString();
+            } else {
+                Player player = board.turn() == WHITE ? white : black;
+                long start = System.nanoTime();
+                move = player.myMove();
+                latencies[searched] = System.nanoTime() - start;
+                result.searchTime += latencies[searched];
+                result.nodes += player.lastNodeCount();
+                int p = (player == white) == firstWhite ? 0 : 1;
+                result.playerNodes[p] += player.lastNodeCount();
+                result.playerSearches[p] += 1;
+                searched += 1;
+                Move mv = Move.mv(move);
+                if (mv == null || !board.isLegal(mv)) {
+                    result.forfeit = true;
+                    break;
+                }
+            }
+            controller.executeCommand(move);
+        }
+        controller.closePlayers();
+        result.winner = result.forfeit ? board.turn().opponent()
+            : controller.winner();
+        result.moves = board.moveCount();
+        result.latencies = Arrays.copyOf(latencies, searched);
+        result.board = board;
+        result.elapsed = System.nanoTime() - _start;
+        return result;
+    }
+
+    /** Print a summary of my results on OUT. */
+    void printSummary(PrintStream out) {
+        int[] wins = wins();
+        int n = Math.max(1, _results.size());
+        out.printf("games %d: white %.1f%%, black %.1f%%, drawn %.1f%%%n",
+                   _results.size(), 100.0 * wins[WHITE.ordinal()] / n,
+                   100.0 * wins[BLACK.ordinal()] / n,
+                   100.0 * wins[EMPTY.ordinal()] / n);
+        int forfeits = 0;
+        for (Result r : _results) {
+            forfeits += r.forfeit ? 1 : 0;
+        }
+        if (forfeits > 0) {
+            out.printf("forfeits %d%n", forfeits);
+        }
+        out.printf("average length %.1f moves; %d nodes/s per thread;"
+                   + " %d ms total%n", averageLength(), nodeRate(),
+                   _elapsed / 1000000);
+        long[] latencies = latencies();
+        out.print("ms per move:");
+        for (int p : PERCENTILES) {
+            out.printf(" p%d %.1f", p, percentile(latencies, p) / 1e6);
+        }
+        out.println();
+    }
+
+    /** Write a header line and then one line of comma-separated values per
+     *  game on OUT. */
+    void writeCSV(PrintStream out) {
+        out.println("game,seed,winner,moves,nodes,search_ms,p50_ms,max_ms");
+        for (int g = 0; g < _results.size(); g += 1) {
+            Result r = _results.get(g);
+            long[] latencies = r.latencies.clone();
+            Arrays.sort(latencies);
+            out.printf("%d,%d,%s,%d,%d,%.1f,%.1f,%.1f%n", g, r.seed,
+                       r.winner == null ? "draw" : r.winner.toName(),
+                       r.moves, r.nodes, r.searchTime / 1e6,
+                       percentile(latencies, 50) / 1e6,
+                       percentile(latencies, 100) / 1e6);
+        }
+    }
+
+    /** Add my games, in order, to OUT. */
+    void writeArchive(GameArchive.Writer out) throws IOException {
+        for (Result r : _results) {
+            out.add(r.board, r.seed, r.winner);
+        }
+    }
+
+    /** Write my summary and results as a JSON object on OUT. */
+    void writeJSON(PrintStream out) {
+        int[] wins = wins();
+        long[] latencies = latencies();
+        out.printf("{\"games\": %d, \"seed\": %d, \"white_wins\": %d,"
+                   + " \"black_wins\": %d, \"draws\": %d,%n",
+                   _results.size(), _seed, wins[WHITE.ordinal()],
+                   wins[BLACK.ordinal()], wins[EMPTY.ordinal()]);
+        out.printf(" \"average_length\": %.2f, \"nodes_per_sec\": %d,"
+                   + " \"total_ms\": %d,%n", averageLength(), nodeRate(),
+                   _elapsed / 1000000);
+        out.print(" \"move_ms\": {");
+        for (int i = 0; i < PERCENTILES.length; i += 1) {
+            out.printf("%s\"p%d\": %.2f", i == 0 ? "" : ", ", PERCENTILES[i],
+                       percentile(latencies, PERCENTILES[i]) / 1e6);
+        }
+        out.printf("},%n \"results\": [%n");
+        for (int g = 0; g < _results.size(); g += 1) {
+            Result r = _results.get(g);
+            out.printf("  {\"seed\": %d, \"winner\": %s, \"moves\": %d,"
+                       + " \"nodes\": %d, \"search_ms\": %.1f}%s%n",
+                       r.seed, r.winner == null ? "null"
+                       : "\"" + r.winner.toName() + "\"",
+                       r.moves, r.nodes, r.searchTime / 1e6,
+                       g == _results.size() - 1 ? "" : ",");
+        }
+        out.println(" ]}");
+    }
+
+    /** Return the score of the first player: the fraction of the
+     *  games it won, counting draws as half wins. */
+    double firstScore() {
+        double points = 0;
+        for (Result r : _results) {
+            if (r.winner == null) {
+                points += 0.5;
+            } else if ((r.winner == WHITE) == r.firstWhite) {
+                points += 1;
+            }
+        }
+        return points / Math.max(1, _results.size());
+    }
+
+    /** Return the average number of positions searched per move by
+     *  the first player if PLAYER is 0, or by the second if it is 1. */
+    double nodesPerMove(int player) {
+        long nodes = 0, searches = 0;
+        for (Result r : _results) {
+            nodes += r.playerNodes[player];
+            searches += r.playerSearches[player];
+        }
+        return (double) nodes / Math.max(1, searches);
+    }
+
+    /** Return the difference in Elo rating implied by a score of SCORE
+     *  (a fraction between 0 and 1) over GAMES games.  Scores of 0 and 1
+     *  are treated as half a game from the extreme. */
+    static double elo(double score, int games) {
+        double eps = 0.5 / Math.max(1, games);
+        score = Math.min(1 - eps, Math.max(eps, score));
+        return 400 * Math.log10(score / (1 - score));
+    }
+
+    /** Return the number of games won by each side, indexed by Piece
+     *  ordinal, with draws counted under EMPTY. */
+    private int[] wins() {
+        int[] wins = new int[Piece.values().length];
+        for (Result r : _results) {
+            wins[(r.winner == null ? EMPTY : r.winner).ordinal()] += 1;
+        }
+        return wins;
+    }
+
+    /** Return the average number of moves per game. */
+    private double averageLength() {
+        long total = 0;
+        for (Result r : _results) {
+            total += r.moves;
+        }
+        return (double) total / Math.max(1, _results.size());
+    }
+
+    /** Return the number of positions searched per second of searching,
+     *  over all games. */
+    private long nodeRate() {
+        long nodes = 0, time = 0;
+        for (Result r : _results) {
+            nodes += r.nodes;
+            time += r.searchTime;
+        }
+        return nodes * 1000000000L / Math.max(1, time);
+    }
+
+    /** Return the times taken by all searched moves, in increasing
+     *  order. */
+    private long[] latencies() {
+        int n = 0;
+        for (Result r : _results) {
+            n += r.latencies.length;
+        }
+        long[] all = new long[n];
+        n = 0;
+        for (Result r : _results) {
+            System.arraycopy(r.latencies, 0, all, n, r.latencies.length);
+            n += r.latencies.length;
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    /** Return the Pth percentile (by nearest rank) of the increasing
+     *  sequence VALUES, or 0 if it is empty. */
+    private static long percentile(long[] values, int p) {
+        if (values.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * values.length);
+        return values[Math.max(0, rank - 1)];
+    }
+
+    /** Template for the players that the Controller of a game creates
+     *  before it is given the players of the tournament.  TextPlayers
+     *  hold no resources, unlike AIs. */
+    private static final Player PLACEHOLDER = new TextPlayer();
+
+    /** A Reporter that discards everything. */
+    private static final Reporter QUIET = new Reporter() {
+        @Override
+        public void reportError(String format, Object... args) {
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+        }
+    };
+
+    /** Number of games. */
+    private final int _games;
+    /** Templates for the two players. */
+    private final Player _first, _second;
+    /** Seed from which the games' seeds are derived. */
+    private final long _seed;
+    /** Time at which play started, in nanoseconds. */
+    private long _start;
+    /** Nanoseconds from the start of play to the end of the last game. */
+    private long _elapsed;
+    /** Results of the games played, in order. */
+    private final List<Result> _results = new ArrayList<>();
+
+}
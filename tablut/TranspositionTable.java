@@ -0,0 +1,136 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static java.lang.Math.min;
+
+/** A fixed-size table of search results indexed by position key (see
+ *  Board.positionKey).  Each slot holds the result for one position: its
+ *  best move and, optionally, a score from a search of some depth, which
+ *  may be exact or only a bound on the true value.  A new result simply
+ *  replaces whatever was in its slot.  The table may be shared by several
+ *  searching threads without locking: each entry is stored as a key/data
+ *  pair in which the key is XORed with the data, so that an entry torn by
+ *  concurrent writes fails to match any key.
+ *  @author Mingyan Zou
+ */
+class TranspositionTable {
+
+    /** Value returned by move for positions not in the table. */
+    static final int NO_MOVE = -1;
+
+    /** Kinds of score recorded with a move: none, a lower bound on the
+     *  position's value, an upper bound, and an exact value. */
+    static final int
+        NO_BOUND = 0,
+        LOWER_BOUND = 1,
+        UPPER_BOUND = 2,
+        EXACT = LOWER_BOUND | UPPER_BOUND;
+
+    /** Largest search depth that can be recorded. */
+    static final int MAX_DEPTH = (1 << 7) - 1;
+
+    /** A table with 2**LOGSIZE slots. */
+    TranspositionTable(int logSize) {
+        _keys = new long[1 << logSize];
+        _data = new long[1 << logSize];
+        _mask = (1 << logSize) - 1;
+    }
+
+    /** Return the best move (encoded as by Move.code) recorded for the
+     *  position with key KEY, or NO_MOVE if there is none. */
+    int move(long key) {
+        int i = slot(key);
+        long data = _data[i];
+        if ((_keys[i] ^ data) != key || data == 0) {
+            return NO_MOVE;
+        }
+        return (int) (data & MOVE_MASK) - 1;
+    }
+
+    /** Return the entry for the position with key KEY, which may be
+     *  examined with entryMove, score, depth, and bound, or 0 if there
+     *  is none.  Reading the entry once in this way ensures that its
+     *  parts are consistent even if other threads are storing. */
+    long entry(long key) {
+        int i = slot(key);
+        long data = _data[i];
+        if ((_keys[i] ^ data) != key) {
+            return 0;
+        }
+        return data;
+    }
+
+    /** Return the move recorded in ENTRY (see entry), or NO_MOVE. */
+    static int entryMove(long entry) {
+        return (int) (entry & MOVE_MASK) - 1;
+    }
+
+    /** Return the score recorded in ENTRY (see entry). */
+    static int score(long entry) {
+        return (int) (entry >> SCORE_SHIFT);
+    }
+
+    /** Return the depth of the search that produced the score in
+     *  ENTRY (see entry). */
+    static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /** Return the kind of score (NO_BOUND, LOWER_BOUND, UPPER_BOUND, or
+     *  EXACT) recorded in ENTRY (see entry). */
+    static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & EXACT;
+    }
+
+    /** Record MOVE (encoded as by Move.code) as the best move found for
+     *  the position with key KEY, with no score. */
+    void store(long key, int move) {
+        store(key, move, 0, 0, NO_BOUND);
+    }
+
+    /** Record MOVE (encoded as by Move.code) as the best move found for
+     *  the position with key KEY by a search of DEPTH plies, which found
+     *  it to have score SCORE.  BOUND (LOWER_BOUND, UPPER_BOUND, or EXACT)
+     *  indicates whether SCORE is a bound on the position's value or the
+     *  value itself. */
+    void store(long key, int move, int score, int depth, int bound) {
+        int i = slot(key);
+        long data = ((long) score << SCORE_SHIFT)
+            | (long) min(depth, MAX_DEPTH) << DEPTH_SHIFT
+            | (long) bound << BOUND_SHIFT
+            | (move + 1);
+        _data[i] = data;
+        _keys[i] = key ^ data;
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_keys, 0);
+        Arrays.fill(_data, 0);
+    }
+
+    /** Return the slot for KEY. */
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & _mask;
+    }
+
+    /** Data layout: bits 0-15 hold the move plus one (so that 0 means
+     *  empty), bits 16-17 the kind of bound, bits 18-24 the depth, and
+     *  bits 32-63 the score. */
+    private static final long MOVE_MASK = (1 << 16) - 1;
+
+    /** Positions of the fields of an entry (see MOVE_MASK). */
+    private static final int
+        BOUND_SHIFT = 16,
+        DEPTH_SHIFT = 18,
+        SCORE_SHIFT = 32;
+
+    /** Keys of the entries, each XORed with the entry's data. */
+    private final long[] _keys;
+    /** Data of the entries. */
+    private final long[] _data;
+    /** Mask selecting a slot number from a key. */
+    private final int _mask;
+
+}
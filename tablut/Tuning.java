@@ -0,0 +1,79 @@
+package tablut;
+
+import static tablut.AI.*;
+
+/** Self-play matches measuring what the selective search techniques of
+ *  the AI (see AI.setPruning) gain in search effort and cost in playing
+ *  strength.  Each configuration plays a match against the full-width
+ *  search at the same depth, and the full set of techniques also plays
+ *  one at a ply deeper.  For each match it reports the configuration's
+ *  score, the difference in Elo rating that score implies (with a 95%
+ *  confidence interval), and the positions searched per move by each
+ *  side.  Run with
+ *      java -cp .. tablut.Tuning [GAMES [DEPTH [THREADS [SEED]]]]
+ *  @author Mingyan Zou
+ */
+class Tuning {
+
+    /** Default number of games per match. */
+    private static final int GAMES = 40;
+
+    /** Default match seed. */
+    private static final long SEED = 61;
+
+    /** The configurations tried, as arguments to AI.setPruning. */
+    private static final int[] CONFIGURATIONS = {
+        NULL_MOVE, LATE_MOVE_REDUCTIONS, FUTILITY, ALL_PRUNING
+    };
+
+    /** Names of CONFIGURATIONS. */
+    private static final String[] NAMES = {
+        "null move", "reductions", "futility", "all"
+    };
+
+    /** Play the matches described by ARGS (see the class comment). */
+    public static void main(String... args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : GAMES;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : DEPTH;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+            : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : SEED;
+
+        System.out.printf("%-16s %6s %7s %14s %12s %12s%n", "pruning",
+                          "games", "score", "elo", "nodes/move",
+                          "baseline");
+        for (int i = 0; i < CONFIGURATIONS.length; i += 1) {
+            match(NAMES[i], CONFIGURATIONS[i], depth, depth, games, threads,
+                  seed);
+        }
+        match("all, depth " + (depth + 1), ALL_PRUNING, depth + 1, depth,
+              games, threads, seed);
+    }
+
+    /** Play a match of GAMES games with THREADS threads and random
+     *  openings determined by SEED, between an AI using the techniques
+     *  PRUNING to search DEPTH plies and one using none to search
+     *  BASEDEPTH plies, and report the result under the heading NAME. */
+    private static void match(String name, int pruning, int depth,
+                              int baseDepth, int games, int threads,
+                              long seed) {
+        AI candidate = new AI(1), baseline = new AI(1);
+        candidate.setPruning(pruning);
+        candidate.setDepth(depth);
+        baseline.setPruning(0);
+        baseline.setDepth(baseDepth);
+        Tournament match = new Tournament(games, seed, candidate, baseline);
+        match.play(threads);
+        double score = match.firstScore();
+        double margin =
+            1.96 * Math.sqrt(score * (1 - score) / Math.max(1, games));
+        double elo = Tournament.elo(score, games),
+            low = Tournament.elo(score - margin, games),
+            high = Tournament.elo(score + margin, games);
+        System.out.printf("%-16s %6d %6.1f%% %+5.0f [%+.0f,%+.0f] %12.0f"
+                          + " %12.0f%n", name, games, 100 * score, elo, low,
+                          high, match.nodesPerMove(0),
+                          match.nodesPerMove(1));
+    }
+
+}
@@ -0,0 +1,211 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static tablut.Utils.error;
+
+/** A variant of the game: the size of the board, the initial position,
+ *  and the rules that differ among the games of the tafl family (where
+ *  the king escapes, whether the king takes part in captures, when the
+ *  throne is hostile, and how the king is captured).  Only one variant
+ *  is played in any run of the program: the one named by the system
+ *  property PROPERTY (default "tablut"), unless select chooses another
+ *  before the first Square is created.  Square, Move, and Board derive
+ *  their tables from it once, as constants, so that the search is as
+ *  fast on each board as it would be in a program written for that
+ *  board alone.
+ *  @author Mingyan Zou
+ */
+final class Variant {
+
+    /** When the throne is hostile (see Board.isHostile).  Only the king
+     *  may stop on the throne under every rule. */
+    enum Throne {
+        /** Never hostile. */
+        NEUTRAL,
+        /** Hostile to every piece when empty, and to attackers when the
+         *  king is on it. */
+        HOSTILE,
+        /** As for HOSTILE, and also hostile to a defender next to it when
+         *  the king is on it and attackers hold the other three squares
+         *  next to it. */
+        TABLUT
+    }
+
+    /** Name of the system property that selects the variant. */
+    static final String PROPERTY = "tablut.variant";
+
+    /** Largest number of squares on a side.  Larger boards would not
+     *  allow moves to be encoded in 16 bits (see Move.code). */
+    static final int MAX_SIZE = 15;
+
+    /** Tablut as in CS 61B: 9x9, escape to any edge square, an armed king
+     *  captured like other pieces away from the throne. */
+    static final Variant TABLUT =
+        new Variant("tablut", false, true, Throne.TABLUT, false,
+                    "---BBB---",
+                    "----B----",
+                    "----W----",
+                    "B---W---B",
+                    "BBWWKWWBB",
+                    "B---W---B",
+                    "----W----",
+                    "----B----",
+                    "---BBB---");
+
+    /** Hnefatafl with the Copenhagen rules (without shield walls or edge
+     *  forts): 11x11, escape to the corners, which are hostile, and an
+     *  armed king captured only when surrounded. */
+    static final Variant HNEFATAFL =
+        new Variant("hnefatafl", true, true, Throne.HOSTILE, true,
+                    "---BBBBB---",
+                    "-----B-----",
+                    "-----------",
+                    "B----W----B",
+                    "B---WWW---B",
+                    "BB-WWKWW-BB",
+                    "B---WWW---B",
+                    "B----W----B",
+                    "-----------",
+                    "-----B-----",
+                    "---BBBBB---");
+
+    /** The rules of HNEFATAFL on a 13x13 board. */
+    static final Variant HNEFATAFL13 =
+        new Variant("hnefatafl13", true, true, Throne.HOSTILE, true,
+                    "----BBBBB----",
+                    "------B------",
+                    "-------------",
+                    "------W------",
+                    "B-----W-----B",
+                    "B----WWW----B",
+                    "BB-WWWKWWW-BB",
+                    "B----WWW----B",
+                    "B-----W-----B",
+                    "------W------",
+                    "-------------",
+                    "------B------",
+                    "----BBBBB----");
+
+    /** All variants. */
+    static final List<Variant> VARIANTS =
+        Collections.unmodifiableList(Arrays.asList(TABLUT, HNEFATAFL,
+                                                   HNEFATAFL13));
+
+    /** Return the variant named NAME. */
+    static Variant named(String name) {
+        for (Variant v : VARIANTS) {
+            if (v.name().equals(name)) {
+                return v;
+            }
+        }
+        throw error("unknown variant: %s", name);
+    }
+
+    /** Return the variant played in this run of the program, fixing it
+     *  if it has not already been fixed. */
+    static synchronized Variant current() {
+        if (_current == null) {
+            _current = named(System.getProperty(PROPERTY, TABLUT.name()));
+        }
+        return _current;
+    }
+
+    /** Make the variant named NAME the one played in this run.  It is an
+     *  error if another has already been fixed by current(). */
+    static synchronized void select(String name) {
+        Variant v = named(name);
+        if (_current != null && _current != v) {
+            throw error("variant %s is already in use", _current.name());
+        }
+        _current = v;
+    }
+
+    /** A variant named NAME in which the king escapes to the corners iff
+     *  CORNERESCAPE (and otherwise to any edge square), the king helps to
+     *  capture iff ARMEDKING, THRONE tells when the throne is hostile,
+     *  and the king must be surrounded on all four sides to be captured
+     *  iff STRONGKING (and otherwise only when on or next to the
+     *  throne).  LAYOUT gives the initial position as one string per row,
+     *  from the top, of the symbols of Pieces (B for attackers, W for
+     *  defenders, K for the king, and - for empty squares).  The king
+     *  starts on the throne, in the middle of the board.  Under corner
+     *  escape, only the king may stop on a corner, and the corners are
+     *  hostile to every piece. */
+    private Variant(String name, boolean cornerEscape, boolean armedKing,
+                    Throne throne, boolean strongKing, String... layout) {
+        int size = layout.length;
+        assert size % 2 == 1 && size <= MAX_SIZE;
+        assert layout[size / 2].charAt(size / 2) == 'K';
+        _name = name;
+        _size = size;
+        _cornerEscape = cornerEscape;
+        _armedKing = armedKing;
+        _throne = throne;
+        _strongKing = strongKing;
+        _layout = layout.clone();
+    }
+
+    /** Return my name. */
+    String name() {
+        return _name;
+    }
+
+    /** Return the number of squares on a side of my board. */
+    int size() {
+        return _size;
+    }
+
+    /** Return true iff the king escapes by reaching a corner, rather than
+     *  any square on the edge. */
+    boolean cornerEscape() {
+        return _cornerEscape;
+    }
+
+    /** Return true iff the king helps to capture attackers. */
+    boolean armedKing() {
+        return _armedKing;
+    }
+
+    /** Return the rule telling when the throne is hostile. */
+    Throne throne() {
+        return _throne;
+    }
+
+    /** Return true iff the king is captured only when surrounded on all
+     *  four sides wherever it stands. */
+    boolean strongKing() {
+        return _strongKing;
+    }
+
+    /** Return the Piece that starts on the square at column COL and row
+     *  ROW (0 being the bottom row). */
+    Piece initial(int col, int row) {
+        return Piece.fromSymbol(_layout[_size - 1 - row].charAt(col));
+    }
+
+    @Override
+    public String toString() {
+        return _name;
+    }
+
+    /** The variant in use, or null if it has not been fixed. */
+    private static Variant _current;
+
+    /** My name. */
+    private final String _name;
+    /** Number of squares on a side. */
+    private final int _size;
+    /** True iff the king escapes to the corners. */
+    private final boolean _cornerEscape;
+    /** True iff the king helps to capture. */
+    private final boolean _armedKing;
+    /** When the throne is hostile. */
+    private final Throne _throne;
+    /** True iff the king must always be surrounded to be captured. */
+    private final boolean _strongKing;
+    /** The initial position, by rows from the top. */
+    private final String[] _layout;
+}